@@ -5,14 +5,12 @@ import android.support.test.runner.AndroidJUnit4;
 import android.test.suitebuilder.annotation.LargeTest;
 
 import org.apache.commons.io.FileUtils;
-import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.File;
-import java.util.LinkedList;
 import java.util.List;
 
 import it.feio.android.omninotes.helpers.BackupHelper;
@@ -210,9 +208,9 @@ public class AutoBackupTest extends BaseEspressoTest {
     }
 
     private void assertAutobackupIsCorrect() {
-        List<LinkedList<DiffMatchPatch.Diff>> autobackupDifferences = BackupHelper
+        BackupHelper.IntegrityCheckResult autobackupCheck = BackupHelper
                 .integrityCheck(StorageHelper.getBackupDir(ConstantsBase.AUTO_BACKUP_DIR));
-        assertTrue(autobackupDifferences.size() == 0);
+        assertTrue(autobackupCheck.isOk());
 
     }
 
@@ -25,6 +25,7 @@ import android.test.RenamingDelegatingContext;
 import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.utils.Constants;
 import org.junit.AfterClass;
+import org.junit.Before;
 import org.junit.BeforeClass;
 
 
@@ -50,6 +51,11 @@ public class BaseAndroidTestCase extends AndroidTestCase {
 		cleanDatabase();
 	}
 
+	@Before
+	public void setUpDatabase() {
+		cleanDatabase();
+	}
+
 	@AfterClass
 	public static void tearDownAfterClass() {
 		testContext.deleteDatabase(DbHelper.getInstance().getDatabaseName());
@@ -57,8 +63,13 @@ public class BaseAndroidTestCase extends AndroidTestCase {
 
 	private static void cleanDatabase() {
 		dbHelper.getDatabase(true).delete(DbHelper.TABLE_NOTES, null, null);
+		dbHelper.getDatabase(true).delete(DbHelper.TABLE_NOTE_CONTENTS, null, null);
 		dbHelper.getDatabase(true).delete(DbHelper.TABLE_CATEGORY, null, null);
 		dbHelper.getDatabase(true).delete(DbHelper.TABLE_ATTACHMENTS, null, null);
+		dbHelper.getDatabase(true).delete(DbHelper.TABLE_NOTE_TAGS, null, null);
+		dbHelper.getDatabase(true).delete(DbHelper.TABLE_NOTES_FTS, null, null);
+		// Tables have been written bypassing helper's methods
+		dbHelper.getQueryCache().invalidate();
 	}
 
 }
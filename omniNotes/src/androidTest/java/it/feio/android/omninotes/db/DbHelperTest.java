@@ -17,12 +17,33 @@
 
 package it.feio.android.omninotes.db;
 
+import android.database.DatabaseUtils;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.support.test.runner.AndroidJUnit4;
 import it.feio.android.omninotes.BaseAndroidTestCase;
+import it.feio.android.omninotes.helpers.AttachmentsHelper;
+import it.feio.android.omninotes.helpers.NotesHelper;
+import it.feio.android.omninotes.models.Attachment;
 import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.models.NoteSummary;
+import it.feio.android.omninotes.models.Stats;
+import it.feio.android.omninotes.models.Tag;
+import it.feio.android.omninotes.utils.Navigation;
+import it.feio.android.omninotes.utils.StorageHelper;
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 
 @RunWith(AndroidJUnit4.class)
 public class DbHelperTest extends BaseAndroidTestCase {
@@ -43,6 +64,42 @@ public class DbHelperTest extends BaseAndroidTestCase {
         dbHelper.updateNote(note2, true);
         assertEquals(2, dbHelper.getNotesByTag("#tag").size());
         assertEquals(1, dbHelper.getNotesByTag("#tagged").size());
+        assertEquals(1, dbHelper.getNotesByTag(new String[]{"#tag", "#tagged"}).size());
+    }
+
+
+    @Test
+    public void lockedNotesTagsNotIndexed() {
+        Note note = new Note();
+        note.setTitle("locked #titletag");
+        note.setContent("secret #contenttag");
+        note.setLocked(true);
+        dbHelper.updateNote(note, true);
+        assertEquals(1, dbHelper.getNotesByTag("#titletag").size());
+        assertEquals(0, dbHelper.getNotesByTag("#contenttag").size());
+        assertEquals(1, dbHelper.getTags().size());
+    }
+
+    @Test
+    public void getTags() {
+        Note note = new Note();
+        note.setTitle("title with #tag");
+        note.setContent("content with #tag and #other");
+        dbHelper.updateNote(note, true);
+        Note note1 = new Note();
+        note1.setContent("#tag");
+        dbHelper.updateNote(note1, true);
+        List<Tag> tags = dbHelper.getTags();
+        assertEquals(2, tags.size());
+        assertEquals("#other", tags.get(0).getText());
+        assertEquals(2, (int) tags.get(1).getCount());
+        assertEquals(2, dbHelper.getTags(note).size());
+
+        note.setContent("content without tags");
+        dbHelper.updateNote(note, true);
+        assertEquals(1, dbHelper.getTags().size());
+        dbHelper.deleteNote(note1);
+        assertEquals(1, (int) dbHelper.getTags().get(0).getCount());
     }
 
     @Test
@@ -63,4 +120,421 @@ public class DbHelperTest extends BaseAndroidTestCase {
         assertEquals(1, dbHelper.getNotesByPattern("%").size());
     }
 
+    @Test
+    public void getNotesByPatternWithQuotes() {
+        Note note = new Note();
+        note.setTitle("it's quoted");
+        note.setContent("content with \\ backslash");
+        dbHelper.updateNote(note, true);
+        assertEquals(1, dbHelper.getNotesByTag("it's").size());
+        assertEquals(1, dbHelper.getNotesByPattern("'").size());
+        assertEquals(1, dbHelper.getNotesByPattern("\\").size());
+    }
+
+    @Test
+    public void setReminderFired() {
+        Note note = new Note();
+        note.setTitle("reminder");
+        note.setAlarm(System.currentTimeMillis());
+        dbHelper.updateNote(note, true);
+        dbHelper.setReminderFired(note.get_id(), true);
+        assertTrue(dbHelper.getNote(note.get_id()).isReminderFired());
+        dbHelper.setReminderFired(note.get_id(), false);
+        assertFalse(dbHelper.getNote(note.get_id()).isReminderFired());
+    }
+
+    @Test
+    public void getNotesByPatternFullText() {
+        Note note1 = new Note();
+        note1.setTitle("groceries");
+        note1.setContent("buy eggs and Milk");
+        dbHelper.updateNote(note1, true);
+        Note note2 = new Note();
+        note2.setTitle("milkshake recipe");
+        note2.setContent("blend milk with ice cream");
+        dbHelper.updateNote(note2, true);
+        Note note3 = new Note();
+        note3.setTitle("secret recipe");
+        note3.setContent("hidden milk");
+        note3.setLocked(true);
+        dbHelper.updateNote(note3, true);
+        List<Note> notes = dbHelper.getNotesByPattern("mil");
+        assertEquals(2, notes.size());
+        assertEquals(note2.get_id(), notes.get(0).get_id());
+        assertEquals(2, dbHelper.getNotesByPattern("recipe").size());
+    }
+
+    @Test
+    public void getStats() {
+        Note note1 = new Note();
+        note1.setTitle("first");
+        note1.setContent("two words");
+        dbHelper.updateNote(note1, true);
+        Note note2 = new Note();
+        note2.setTitle("second");
+        note2.setContent("with #tag");
+        note2.setArchived(true);
+        dbHelper.updateNote(note2, true);
+        Note note3 = new Note();
+        note3.setTitle("third");
+        note3.setTrashed(true);
+        note3.setChecklist(true);
+        dbHelper.updateNote(note3, true);
+        Stats stats = dbHelper.getStats();
+        assertEquals(1, stats.getNotesActive());
+        assertEquals(1, stats.getNotesArchived());
+        assertEquals(1, stats.getNotesTrashed());
+        assertEquals(1, stats.getNotesChecklist());
+        assertEquals(1, stats.getTags());
+        assertEquals(NotesHelper.getWords(note1) + NotesHelper.getWords(note2) + NotesHelper.getWords(note3),
+                stats.getWords());
+    }
+
+    @Test
+    public void getNavigationCounts() {
+        Note note1 = new Note();
+        note1.setTitle("archived");
+        note1.setArchived(true);
+        dbHelper.updateNote(note1, true);
+        Note note2 = new Note();
+        note2.setTitle("trashed with reminder");
+        note2.setTrashed(true);
+        note2.setAlarm(System.currentTimeMillis());
+        dbHelper.updateNote(note2, true);
+        Note note3 = new Note();
+        note3.setTitle("reminder");
+        note3.setAlarm(System.currentTimeMillis());
+        dbHelper.updateNote(note3, true);
+        Map<Integer, Integer> counts = dbHelper.getNavigationCounts();
+        assertEquals(1, (int) counts.get(Navigation.ARCHIVE));
+        assertEquals(1, (int) counts.get(Navigation.TRASH));
+        assertEquals(1, (int) counts.get(Navigation.REMINDERS));
+        assertEquals(3, (int) counts.get(Navigation.UNCATEGORIZED));
+    }
+
+    @Test
+    public void buildFtsQuery() {
+        assertEquals("milk* eggs*", DbHelper.buildFtsQuery("Milk, eggs!"));
+        assertNull(DbHelper.buildFtsQuery("%"));
+        assertEquals("\u00dcber*", DbHelper.buildFtsQuery("\u00dcber"));
+    }
+
+    @Test
+    public void getNotesByPatternNonAscii() {
+        Note note = new Note();
+        note.setTitle("\u00dcber uns");
+        note.setContent("Stra\u00dfe");
+        dbHelper.updateNote(note, true);
+        assertEquals(1, dbHelper.getNotesByPattern("\u00dcber").size());
+        assertEquals(1, dbHelper.getNotesByPattern("Stra\u00dfe").size());
+    }
+
+    @Test
+    public void getNotesPage() {
+        for (int i = 0; i < 5; i++) {
+            Note note = new Note();
+            note.setCreation(1000L + i);
+            // Null titles lead to null sorting values when sorting by title
+            note.setTitle(i % 2 == 0 ? "paged title" : null);
+            note.setContent("paged content " + i);
+            dbHelper.updateNote(note, false);
+        }
+        List<Note> notes = dbHelper.getAllNotes(true);
+        List<Note> pagedNotes = new ArrayList<>();
+        NotesPage notesPage = new NotesPage(null, 2);
+        while (!notesPage.isCompleted()) {
+            pagedNotes.addAll(dbHelper.getNotesPage(notesPage));
+        }
+        assertEquals(notes.size(), pagedNotes.size());
+        for (int i = 0; i < notes.size(); i++) {
+            assertEquals(notes.get(i).get_id(), pagedNotes.get(i).get_id());
+        }
+    }
+
+
+    @Test
+    public void getNotesPageRemaining() {
+        for (int i = 0; i < 5; i++) {
+            Note note = new Note();
+            note.setCreation(1000L + i);
+            note.setTitle("paged title " + i);
+            dbHelper.updateNote(note, false);
+        }
+        List<Note> notes = dbHelper.getAllNotes(true);
+        NotesPage notesPage = new NotesPage(null, 2);
+        List<Note> pagedNotes = new ArrayList<>(dbHelper.getNotesPage(notesPage));
+        pagedNotes.addAll(dbHelper.getNotesPageRemaining(notesPage, null));
+        assertTrue(notesPage.isCompleted());
+        assertEquals(notes.size(), pagedNotes.size());
+        assertEquals(notes.get(4).get_id(), pagedNotes.get(4).get_id());
+        assertTrue(dbHelper.getNotesPageRemaining(notesPage, null).isEmpty());
+    }
+
+
+    @Test
+    public void emptyTrash() {
+        for (int i = 0; i < 3; i++) {
+            Note note = new Note();
+            note.setCreation(1000L + i);
+            note.setTitle("trashed #tag " + i);
+            note.setTrashed(i > 0);
+            note.getAttachmentsList().add(new Attachment(10L + i, Uri.parse("file:///trashed" + i), "trashed", 1, 0,
+                    "image/jpeg"));
+            dbHelper.updateNote(note, false);
+        }
+        List<Attachment> deletedAttachments = dbHelper.emptyTrash(null);
+        assertEquals(2, deletedAttachments.size());
+        assertEquals(0, dbHelper.getNotesTrashed().size());
+        assertEquals(1, dbHelper.getAllNotes(false).size());
+        assertEquals(1, dbHelper.getAllAttachments().size());
+        assertEquals(1, dbHelper.getNotesByTag("#tag").size());
+    }
+
+
+    @Test
+    public void getNoteSummaries() {
+        Note note = new Note();
+        note.setTitle("summary title");
+        note.setContent("\n  summary content");
+        dbHelper.updateNote(note, true);
+        List<Note> summaries = dbHelper.getNotesByPattern("summary");
+        assertEquals(1, summaries.size());
+        assertTrue(summaries.get(0) instanceof NoteSummary);
+        assertEquals("summary content", summaries.get(0).getContentPreview());
+        assertNull(summaries.get(0).getFirstAttachment());
+        // Whole content is lazily loaded
+        assertEquals(note.getContent(), summaries.get(0).getContent());
+    }
+
+
+    @Test
+    public void queryCache() {
+        Note note = new Note();
+        note.setContent("cached content");
+        dbHelper.updateNote(note, true);
+        QueryCache queryCache = dbHelper.getQueryCache();
+        long hits = queryCache.getHits();
+        dbHelper.getNotesActive().get(0).setTitle("modified outside");
+        assertFalse("modified outside".equals(dbHelper.getNotesActive().get(0).getTitle()));
+        assertEquals(hits + 1, queryCache.getHits());
+
+        // Writes invalidate cached results
+        dbHelper.trashNote(note, true);
+        assertEquals(0, dbHelper.getNotesActive().size());
+        assertEquals(hits + 1, queryCache.getHits());
+    }
+
+
+    @Test
+    public void observeNotesActive() {
+        Iterator<List<Note>> emissions = dbHelper.observeNotesActive().toBlocking().getIterator();
+        assertEquals(0, emissions.next().size());
+        Note note = new Note();
+        note.setContent("observed content");
+        dbHelper.updateNote(note, true);
+        assertEquals(1, emissions.next().size());
+    }
+
+
+    @Test
+    public void batchOperations() {
+        List<Note> notes = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            Note note = new Note();
+            note.setCreation(1000L + i);
+            note.setContent("batch #tag " + i);
+            notes.add(dbHelper.updateNote(note, false));
+        }
+        List<Integer> progress = new ArrayList<>();
+        dbHelper.archiveNotes(notes, true, null, (processed, total) -> progress.add(processed));
+        assertEquals(0, dbHelper.getNotesActive().size());
+        assertEquals(1200, dbHelper.getNotesArchived().size());
+        assertEquals(3, progress.size());
+        assertEquals(1200, (int) progress.get(2));
+
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        cancellationSignal.cancel();
+        try {
+            dbHelper.trashNotes(notes, true, cancellationSignal, null);
+            fail();
+        } catch (OperationCanceledException e) {
+            assertEquals(0, dbHelper.getNotesTrashed().size());
+        }
+
+        dbHelper.deleteNotes(notes, false, null, null);
+        assertEquals(0, dbHelper.getAllNotes(false).size());
+        assertEquals(0, dbHelper.getTags().size());
+    }
+
+
+    @Test
+    public void updateNoteDelta() {
+        Note note = new Note();
+        note.setTitle("delta title");
+        note.setContent("delta #tag");
+        note.getAttachmentsList().add(new Attachment(1L, Uri.parse("file:///first"), "first", 1, 0, "image/jpeg"));
+        note.getAttachmentsList().add(new Attachment(2L, Uri.parse("file:///second"), "second", 1, 0,
+                "image/jpeg"));
+        dbHelper.updateNote(note, true);
+        Note persistedNote = dbHelper.getNote(note.get_id());
+
+        Note changedNote = dbHelper.getNote(note.get_id());
+        changedNote.setArchived(true);
+        changedNote.setContent("changed #other");
+        changedNote.getAttachmentsList().remove(0);
+        changedNote.getAttachmentsList().add(new Attachment(3L, Uri.parse("file:///third"), "third", 1, 0,
+                "image/jpeg"));
+        dbHelper.updateNote(changedNote, persistedNote, false);
+
+        Note savedNote = dbHelper.getNote(note.get_id());
+        assertTrue(savedNote.isArchived());
+        assertEquals("delta title", savedNote.getTitle());
+        assertEquals("changed #other", savedNote.getContent());
+        assertEquals(persistedNote.getLastModification(), savedNote.getLastModification());
+        assertEquals(2, savedNote.getAttachmentsList().size());
+        assertEquals(2L, (long) savedNote.getAttachmentsList().get(0).getId());
+        assertEquals("#other", dbHelper.getTags().get(0).getText());
+    }
+
+
+    @Test
+    public void separatedContent() {
+        Note note = new Note();
+        note.setTitle("separated");
+        note.setContent("separated content");
+        dbHelper.updateNote(note, true);
+        Note persistedNote = dbHelper.getNote(note.get_id());
+        Note lockedNote = dbHelper.getNote(note.get_id());
+        lockedNote.setLocked(true);
+        dbHelper.updateNote(lockedNote, persistedNote, true);
+
+        Note savedNote = dbHelper.getNote(note.get_id());
+        assertTrue(savedNote.isLocked());
+        assertEquals("separated content", savedNote.getContent());
+        // Locked notes content is neither previewed nor searchable by content
+        assertEquals(0, dbHelper.getNotesByPattern("content").size());
+        assertEquals(1, dbHelper.getNotesByPattern("separated").size());
+
+        dbHelper.deleteNote(note);
+        assertEquals(0L, DatabaseUtils.queryNumEntries(dbHelper.getDatabase(), DbHelper.TABLE_NOTE_CONTENTS));
+    }
+
+
+    @Test
+    public void updateFiredReminders() {
+        List<Note> notes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Note note = new Note();
+            note.setCreation((long) i + 1);
+            note.setTitle("fired " + i);
+            note.setAlarm(i + 1);
+            note.setArchived(true);
+            notes.add(dbHelper.updateNote(note, false));
+        }
+        Map<Long, Long> nextReminders = Collections.singletonMap(notes.get(1).get_id(), 100L);
+        dbHelper.updateFiredReminders(notes.subList(0, 2), true, nextReminders);
+
+        for (int i = 0; i < 2; i++) {
+            assertFalse(dbHelper.getNote(notes.get(i).get_id()).isArchived());
+        }
+        assertTrue(dbHelper.getNote(notes.get(0).get_id()).isReminderFired());
+        // Recurring reminder is moved to its next occurrence and kept pending
+        Note recurringNote = dbHelper.getNote(notes.get(1).get_id());
+        assertEquals("100", recurringNote.getAlarm());
+        assertFalse(recurringNote.isReminderFired());
+        Note untouchedNote = dbHelper.getNote(notes.get(2).get_id());
+        assertTrue(untouchedNote.isArchived());
+        assertFalse(untouchedNote.isReminderFired());
+    }
+
+
+    @Test
+    public void sharedAttachmentFiles() {
+        Uri sharedUri = Uri.parse("file:///shared.jpg");
+        Note firstNote = new Note();
+        firstNote.setCreation(1L);
+        firstNote.getAttachmentsList().add(new Attachment(11L, sharedUri, "shared", 1, 0, "image/jpeg"));
+        firstNote = dbHelper.updateNote(firstNote, false);
+        Note secondNote = new Note();
+        secondNote.setCreation(2L);
+        secondNote.getAttachmentsList().add(new Attachment(12L, sharedUri, "shared", 1, 0, "image/jpeg"));
+        secondNote = dbHelper.updateNote(secondNote, false);
+
+        List<Attachment> deletedAttachments = dbHelper.deleteNotes(Collections.singletonList(firstNote), false,
+                null, null);
+        assertTrue(deletedAttachments.isEmpty());
+        assertTrue(dbHelper.isAttachmentFileUsed(sharedUri, Collections.<Attachment>emptyList()));
+        assertFalse(dbHelper.isAttachmentFileUsed(sharedUri, secondNote.getAttachmentsList()));
+
+        deletedAttachments = dbHelper.deleteNotes(Collections.singletonList(secondNote), false, null, null);
+        assertEquals(1, deletedAttachments.size());
+        assertEquals(sharedUri, deletedAttachments.get(0).getUri());
+    }
+
+
+    @Test
+    public void unsavedSharedAttachmentFileKept() throws IOException {
+        File savedFile = File.createTempFile("saved", ".txt");
+        FileUtils.write(savedFile, "shared content");
+        File unsavedFile = File.createTempFile("unsaved", ".txt");
+        FileUtils.write(unsavedFile, "shared content");
+
+        File sharedFile = StorageHelper.storeByContent(savedFile, 31L);
+        Note savedNote = new Note();
+        savedNote.setCreation(1L);
+        savedNote.getAttachmentsList().add(new Attachment(31L, Uri.fromFile(sharedFile), "saved", 1, 0,
+                "text/plain"));
+        savedNote = dbHelper.updateNote(savedNote, false);
+        // A new attachment, still being edited, gets the same file
+        assertEquals(sharedFile, StorageHelper.storeByContent(unsavedFile, 32L));
+        Attachment unsavedAttachment = new Attachment(32L, Uri.fromFile(sharedFile), "unsaved", 1, 0, "text/plain");
+
+        for (Attachment attachment : dbHelper.deleteNotes(Collections.singletonList(savedNote), false, null, null)) {
+            assertFalse(AttachmentsHelper.deleteFileIfUnused(testContext, attachment,
+                    Collections.<Attachment>emptyList()));
+        }
+        assertTrue(sharedFile.exists());
+
+        // Discarding the new attachment releases the file
+        AttachmentsHelper.deleteUnusedFiles(testContext, Collections.singletonList(unsavedAttachment),
+                Collections.<Attachment>emptyList());
+        assertFalse(sharedFile.exists());
+    }
+
+
+    @Test
+    public void queryPlansUseIndexes() {
+        for (int i = 0; i < 10; i++) {
+            Note note = new Note();
+            note.setTitle("planned " + i);
+            note.setContent("planned content");
+            note.setArchived(i % 3 == 0);
+            note.setTrashed(i % 4 == 0);
+            note.getAttachmentsList().add(new Attachment((long) i, Uri.parse("file:///" + i), "" + i, 1, 0,
+                    "image/jpeg"));
+            dbHelper.updateNote(note, true);
+        }
+        List<QueryBuilder> conditions = new ArrayList<>();
+        conditions.add(dbHelper.getActiveCondition());
+        conditions.add(dbHelper.getArchivedCondition());
+        conditions.add(dbHelper.getTrashedCondition());
+        conditions.add(dbHelper.getUncategorizedCondition());
+        conditions.add(dbHelper.getCategoryCondition(1L));
+        conditions.add(dbHelper.getRemindersCondition(false));
+        conditions.add(dbHelper.getRemindersCondition(true));
+        conditions.add(QueryBuilder.where(DbHelper.KEY_LOCKED + " = 1"));
+        for (QueryBuilder condition : conditions) {
+            assertNoFullScan(dbHelper.getNotesQueryPlan(condition));
+        }
+        assertNoFullScan(dbHelper.getQueryPlan("SELECT * FROM " + DbHelper.TABLE_ATTACHMENTS + " WHERE "
+                + DbHelper.KEY_ATTACHMENT_NOTE_ID + " IN (?, ?)", new Object[]{1L, 2L}));
+    }
+
+
+    private void assertNoFullScan(List<String> plan) {
+        for (String detail : plan) {
+            assertFalse(detail, detail.matches("SCAN (TABLE )?\\w+.*") && !detail.startsWith("SCAN SUBQUERY"));
+        }
+    }
+
 }
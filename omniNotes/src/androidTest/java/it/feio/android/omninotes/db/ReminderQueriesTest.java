@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2013-2019 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.db;
+
+import android.support.test.runner.AndroidJUnit4;
+import it.feio.android.omninotes.BaseAndroidTestCase;
+import it.feio.android.omninotes.models.Note;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Calendar;
+import java.util.List;
+
+
+@RunWith(AndroidJUnit4.class)
+public class ReminderQueriesTest extends BaseAndroidTestCase {
+
+    @Test
+    public void reminderRanges() {
+        Calendar now = Calendar.getInstance();
+        now.set(2019, Calendar.MARCH, 10, 12, 0, 0);
+        long hour = 60 * 60 * 1000;
+        createNote(now.getTimeInMillis() - 2 * hour, false);
+        createNote(now.getTimeInMillis() - hour, true);
+        createNote(now.getTimeInMillis() + hour, false);
+        createNote(now.getTimeInMillis() + 24 * hour, false);
+        createNote(now.getTimeInMillis() + 72 * hour, false);
+
+        ReminderQueries reminderQueries = new ReminderQueries(dbHelper, now);
+        List<Note> next = reminderQueries.getNext(2);
+        assertEquals(2, next.size());
+        assertEquals(now.getTimeInMillis() + hour, Long.parseLong(next.get(0).getAlarm()));
+        assertEquals(3, reminderQueries.getNext(0).size());
+        // Fired reminders are not pending anymore
+        assertEquals(2, reminderQueries.getToday().size());
+        assertEquals(1, reminderQueries.getTomorrow().size());
+        assertEquals(1, reminderQueries.getOverdue().size());
+        assertEquals(4, reminderQueries.getPendingCount());
+    }
+
+
+    @Test
+    public void recurrentRemindersOccurrences() {
+        Calendar now = Calendar.getInstance();
+        now.set(2019, Calendar.MARCH, 10, 12, 0, 0);
+        long hour = 60 * 60 * 1000;
+        Note daily = createNote(now.getTimeInMillis() + hour, false);
+        daily.setRecurrenceRule("FREQ=DAILY;COUNT=30");
+        dbHelper.updateNote(daily, false);
+        createNote(now.getTimeInMillis() + 2 * hour, false);
+
+        ReminderQueries reminderQueries = new ReminderQueries(dbHelper, now);
+        assertEquals(2, reminderQueries.getToday().size());
+        List<Note> tomorrow = reminderQueries.getTomorrow();
+        assertEquals(1, tomorrow.size());
+        assertEquals(daily.get_id(), tomorrow.get(0).get_id());
+    }
+
+
+    @Test
+    public void rangeQueryUsesIndex() {
+        QueryBuilder condition = new ReminderQueries(dbHelper).getRangeCondition(0, Long.MAX_VALUE);
+        for (String detail : dbHelper.getNotesQueryPlan(condition)) {
+            assertFalse(detail, detail.matches("SCAN (TABLE )?notes.*"));
+        }
+    }
+
+
+    private Note createNote(long reminder, boolean fired) {
+        Note note = new Note();
+        note.setCreation(reminder);
+        note.setTitle("reminder " + reminder);
+        note.setAlarm(reminder);
+        dbHelper.updateNote(note, false);
+        dbHelper.setReminderFired(note.get_id(), fired);
+        return note;
+    }
+
+}
@@ -34,11 +34,18 @@ import org.junit.runner.RunWith;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import it.feio.android.omninotes.BaseAndroidTestCase;
+import it.feio.android.omninotes.R;
+import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.models.Attachment;
 import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.utils.StorageHelper;
@@ -112,6 +119,154 @@ public class BackupHelperTest extends BaseAndroidTestCase {
 	}
 
 
+	@Test
+	public void testExportIncremental() throws IOException {
+		Note note = new Note();
+		note.setCreation(1L);
+		note.setTitle("incremental note");
+		File testAttachment = File.createTempFile("testAttachment", ".txt");
+		FileUtils.write(testAttachment, "some test content for attachment");
+		Attachment attachment = new Attachment(Uri.fromFile(testAttachment), "text/plain");
+		note.getAttachmentsList().add(attachment);
+		dbHelper.updateNote(note, false);
+		Note untouchedNote = new Note();
+		untouchedNote.setCreation(2L);
+		untouchedNote.setTitle("untouched note");
+		dbHelper.updateNote(untouchedNote, false);
+
+		assertTrue(BackupHelper.exportIncremental(targetDir, null));
+		File attachmentBackup = new File(targetAttachmentsDir, FilenameUtils.getName(attachment.getUriPath()));
+		assertTrue(new File(targetDir, BackupManifest.MANIFEST_FILE_NAME).exists());
+		assertTrue(attachmentBackup.exists());
+		assertEquals(2, FileUtils.listFiles(targetDir, new RegexFileFilter("\\d+.json"), null).size());
+
+		// Unchanged notes are not written again
+		File untouchedNoteFile = BackupHelper.getBackupNoteFile(targetDir, untouchedNote);
+		FileUtils.write(untouchedNoteFile, "not rewritten");
+		dbHelper.deleteNote(note);
+		assertTrue(BackupHelper.exportIncremental(targetDir, null));
+		assertEquals("not rewritten", FileUtils.readFileToString(untouchedNoteFile));
+		assertFalse(BackupHelper.getBackupNoteFile(targetDir, note).exists());
+		assertFalse(attachmentBackup.exists());
+
+		// Archiving doesn't update last modification but changes note file
+		dbHelper.archiveNotes(Collections.singletonList(untouchedNote), true, null, null);
+		assertTrue(BackupHelper.exportIncremental(targetDir, null));
+		assertFalse("not rewritten".equals(FileUtils.readFileToString(untouchedNoteFile)));
+	}
+
+
+	@Test
+	public void testExportIncrementalWithoutManifest() throws IOException {
+		Note note = new Note();
+		note.setCreation(1L);
+		note.setTitle("exported note");
+		dbHelper.updateNote(note, false);
+		// Folder exported before manifests were written, with a note deleted since then
+		File staleNoteFile = new File(targetDir, "2.json");
+		FileUtils.write(staleNoteFile, "deleted note");
+		File staleAttachment = new File(targetAttachmentsDir, "deleted.txt");
+		FileUtils.write(staleAttachment, "deleted attachment");
+
+		assertTrue(BackupHelper.exportIncremental(targetDir, null));
+		assertTrue(BackupHelper.getBackupNoteFile(targetDir, note).exists());
+		assertFalse(staleNoteFile.exists());
+		assertFalse(staleAttachment.exists());
+	}
+
+
+	@Test
+	public void testIntegrityCheck() throws IOException {
+		Note note = new Note();
+		note.setCreation(1L);
+		note.setTitle("checked note");
+		File testAttachment = File.createTempFile("testAttachment", ".txt");
+		FileUtils.write(testAttachment, "some test content for attachment");
+		Attachment attachment = new Attachment(Uri.fromFile(testAttachment), "text/plain");
+		note.getAttachmentsList().add(attachment);
+		dbHelper.updateNote(note, false);
+		assertTrue(BackupHelper.exportIncremental(targetDir, null));
+		assertTrue(BackupHelper.integrityCheck(targetDir).isOk());
+
+		File noteFile = BackupHelper.getBackupNoteFile(targetDir, note);
+		FileUtils.write(noteFile, FileUtils.readFileToString(noteFile).replace("checked", "altered"));
+		File attachmentBackup = new File(targetAttachmentsDir, FilenameUtils.getName(attachment.getUriPath()));
+		// Same size, so that only hashing can detect it
+		FileUtils.write(attachmentBackup, "Some test content for attachment");
+		BackupHelper.IntegrityCheckResult result = BackupHelper.integrityCheck(targetDir);
+		assertEquals(1, result.getMismatchingNotes().size());
+		assertEquals(note.get_id(), result.getMismatchingNotes().get(0));
+		assertEquals(1, result.getCorruptAttachments().size());
+		assertEquals(attachmentBackup.getName(), result.getCorruptAttachments().get(0));
+		assertFalse(BackupHelper.getNoteDiff(targetDir, note).isEmpty());
+	}
+
+
+	@Test
+	public void testArchiveExportAndImport() {
+		for (long i = 1; i <= 3; i++) {
+			Note note = new Note();
+			note.setCreation(i);
+			note.setTitle("archived note " + i);
+			note.setContent("multiline\ncontent " + i);
+			dbHelper.updateNote(note, false);
+		}
+		File archive = new File(targetDir, "test" + BackupArchiveHelper.ARCHIVE_EXTENSION);
+		assertTrue(BackupArchiveHelper.exportArchive(archive, false, null));
+		assertTrue(BackupArchiveHelper.isArchive(archive));
+
+		dbHelper.getDatabase(true).delete(DbHelper.TABLE_NOTES, null, null);
+		assertTrue(BackupArchiveHelper.importArchive(archive, null));
+		List<Note> notes = dbHelper.getAllNotes(false);
+		assertEquals(3, notes.size());
+		assertEquals("multiline\ncontent 2", dbHelper.getNote(2).getContent());
+	}
+
+
+	@Test
+	public void testArchiveAttachmentsStored() throws IOException {
+		Note note = new Note();
+		note.setCreation(1L);
+		note.setTitle("note with attachment");
+		File testAttachment = File.createTempFile("testAttachment", ".txt");
+		FileUtils.write(testAttachment, "some test content for attachment");
+		Attachment attachment = new Attachment(Uri.fromFile(testAttachment), "text/plain");
+		note.getAttachmentsList().add(attachment);
+		dbHelper.updateNote(note, false);
+		File archive = new File(targetDir, "test" + BackupArchiveHelper.ARCHIVE_EXTENSION);
+		assertTrue(BackupArchiveHelper.exportArchive(archive, false, null));
+
+		ZipFile zipFile = new ZipFile(archive);
+		try {
+			ZipEntry entry = zipFile.getEntry(StorageHelper.getAttachmentDir().getName() + "/"
+					+ FilenameUtils.getName(attachment.getUriPath()));
+			assertEquals(ZipEntry.STORED, entry.getMethod());
+			assertEquals("some test content for attachment", IOUtils.toString(zipFile.getInputStream(entry)));
+		} finally {
+			zipFile.close();
+		}
+	}
+
+
+	@Test
+	public void testRunInParallel() {
+		List<Callable<Integer>> copies = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			int copy = i;
+			copies.add(() -> {
+				if (copy == 3) {
+					throw new IOException("failed copy");
+				}
+				return copy;
+			});
+		}
+		List<Integer> results = BackupHelper.runInParallel(copies, 3, R.string.attachment, null);
+		assertEquals(10, results.size());
+		assertNull(results.get(3));
+		assertEquals(Integer.valueOf(9), results.get(9));
+	}
+
+
 	@After
 	public void tearDown() throws Exception {
 		super.tearDown();
@@ -17,22 +17,27 @@
 
 package it.feio.android.omninotes.utils;
 
+import android.app.PendingIntent;
+import android.content.Context;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
+import it.feio.android.omninotes.BaseAndroidTestCase;
+import it.feio.android.omninotes.db.ReminderQueries;
 import it.feio.android.omninotes.models.Note;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.util.Calendar;
+import java.util.List;
 
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
 
 @RunWith(AndroidJUnit4.class)
-public class ReminderHelperTest {
+public class ReminderHelperTest extends BaseAndroidTestCase {
 
     @Test
     public void shouldGetRequestCode() {
@@ -73,6 +78,50 @@ public class ReminderHelperTest {
         assertFalse(reminderRemoved);
     }
 
+    @Test
+    public void shouldScheduleNextReminder() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        Note note = buildNote();
+        note.setAlarm(Calendar.getInstance().getTimeInMillis() + 60000);
+        dbHelper.updateNote(note, false);
+        ReminderHelper.scheduleNextReminder(context);
+        assertTrue(isRemindersChainArmed(context));
+        dbHelper.deleteNote(note);
+        ReminderHelper.scheduleNextReminder(context);
+        assertFalse(isRemindersChainArmed(context));
+    }
+
+    @Test
+    public void shouldFireReminderPassedWhileChainArmedAgain() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        long firedUntil = ReminderHelper.getRemindersFiredUntil(context);
+        long now = Calendar.getInstance().getTimeInMillis();
+        try {
+            // Reminder's alarm went off but is not delivered yet when a note write arms the chain again
+            ReminderHelper.setRemindersFiredUntil(context, now - 60000);
+            Note passed = buildNote();
+            passed.setAlarm(now - 30000);
+            dbHelper.updateNote(passed, false);
+            Note next = buildNote();
+            next.setCreation(passed.getCreation() + 1);
+            next.setAlarm(now + 60000);
+            dbHelper.updateNote(next, false);
+            ReminderHelper.scheduleNextReminder(context);
+            assertTrue(isRemindersChainArmed(context));
+            assertEquals(passed.get_id(), ReminderHelper.getNextChainReminder(context).get_id());
+            List<Note> due = new ReminderQueries(dbHelper).getDue(ReminderHelper.getRemindersFiredUntil(context) + 1);
+            assertEquals(1, due.size());
+            assertEquals(passed.get_id(), due.get(0).get_id());
+        } finally {
+            ReminderHelper.setRemindersFiredUntil(context, firedUntil);
+        }
+    }
+
+    private boolean isRemindersChainArmed(Context context) {
+        return PendingIntent.getBroadcast(context, 0, ReminderHelper.getRemindersChainIntent(context),
+                PendingIntent.FLAG_NO_CREATE) != null;
+    }
+
     private Note buildNote() {
         Long now = Calendar.getInstance().getTimeInMillis();
         Note note = new Note();
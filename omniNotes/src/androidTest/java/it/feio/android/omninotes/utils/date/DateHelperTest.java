@@ -19,9 +19,11 @@ package it.feio.android.omninotes.utils.date;
 
 import android.test.InstrumentationTestCase;
 import it.feio.android.omninotes.helpers.date.DateHelper;
+import it.feio.android.omninotes.helpers.date.RecurrenceHelper;
 import org.junit.Assert;
 
 import java.util.Calendar;
+import java.util.List;
 
 
 public class DateHelperTest extends InstrumentationTestCase {
@@ -48,4 +50,20 @@ public class DateHelperTest extends InstrumentationTestCase {
 
 	}
 
+
+	public void testOccurrences() {
+		long reminder = Calendar.getInstance().getTimeInMillis() + TEN_MINUTES;
+		long day = 24 * MILLISEC_TO_HOURS_RATIO;
+
+		// Window is shortened to not depend on daylight saving time changes
+		List<Long> occurrences = RecurrenceHelper.getOccurrences(reminder, "FREQ=DAILY;COUNT=30", reminder,
+				reminder + 7 * day - 2 * MILLISEC_TO_HOURS_RATIO);
+		Assert.assertEquals(7, occurrences.size());
+		Assert.assertEquals(reminder, (long) occurrences.get(0));
+
+		// Not recurrent reminders occur just once
+		Assert.assertEquals(1, RecurrenceHelper.getOccurrences(reminder, null, reminder, reminder + day).size());
+		Assert.assertTrue(RecurrenceHelper.getOccurrences(reminder, "", reminder + 1, reminder + day).isEmpty());
+	}
+
 }
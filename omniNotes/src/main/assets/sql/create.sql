@@ -5,7 +5,8 @@ CREATE
 		creation INTEGER PRIMARY KEY,
 		last_modification INTEGER,
 		title TEXT,
-		content TEXT,
+		title_sort TEXT,
+		preview TEXT,
 		archived INTEGER,
 		trashed INTEGER,
 		alarm INTEGER DEFAULT null,
@@ -16,7 +17,23 @@ CREATE
 		address TEXT,
 		category_id INTEGER DEFAULT null,
 		locked INTEGER,  
-		checklist  INTEGER
+		checklist  INTEGER,
+		words INTEGER,
+		chars INTEGER
+	);
+CREATE INDEX notes_trashed_archived ON notes(trashed, archived, category_id);
+CREATE INDEX notes_category ON notes(category_id, trashed);
+CREATE INDEX notes_alarm ON notes(alarm);
+CREATE INDEX notes_locked ON notes(locked);
+	
+
+
+-- Create table for NOTES content (kept apart to let lists read small rows only)
+CREATE
+	TABLE note_contents
+	(
+		note_id INTEGER PRIMARY KEY,
+		content TEXT
 	);
 	
 
@@ -33,6 +50,8 @@ CREATE
 		mime_type TEXT,
 		note_id INTEGER
 	);
+CREATE INDEX attachments_note_id ON attachments(note_id, attachment_id);
+CREATE INDEX attachments_uri ON attachments(uri);
 	
 
 
@@ -45,3 +64,26 @@ CREATE
 		description TEXT,
 		color TEXT
 	);
+
+
+
+-- Create full-text search index for NOTES (docid is note's creation)
+CREATE
+	VIRTUAL TABLE notes_fts
+	USING fts4
+	(
+		title,
+		content
+	);
+
+
+
+-- Create tags index for NOTES
+CREATE
+	TABLE note_tags
+	(
+		note_id INTEGER,
+		tag TEXT,
+		PRIMARY KEY (note_id, tag)
+	);
+CREATE INDEX note_tags_tag ON note_tags(tag);
@@ -0,0 +1,13 @@
+/*
+ * Adds full-text search index for notes' title and content (locked notes are indexed by title only)
+ */
+CREATE
+	VIRTUAL TABLE notes_fts
+	USING fts4
+	(
+		title,
+		content
+	);
+INSERT INTO notes_fts(docid, title, content)
+SELECT creation, title, CASE WHEN locked = 1 THEN '' ELSE content END
+FROM notes;
@@ -0,0 +1,5 @@
+/*
+ * Adds persisted words and chars counts to notes (null until computed by the app)
+ */
+ALTER TABLE notes ADD COLUMN words INTEGER;
+ALTER TABLE notes ADD COLUMN chars INTEGER;
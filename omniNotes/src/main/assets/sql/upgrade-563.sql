@@ -0,0 +1,11 @@
+/*
+ * Adds tags index table (filled by the app from notes' text after upgrade)
+ */
+CREATE
+	TABLE note_tags
+	(
+		note_id INTEGER,
+		tag TEXT,
+		PRIMARY KEY (note_id, tag)
+	);
+CREATE INDEX note_tags_tag ON note_tags(tag);
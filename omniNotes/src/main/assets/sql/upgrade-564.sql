@@ -0,0 +1,15 @@
+/*
+ * Moves notes content to a side table read only when whole notes are needed. Notes rows keep a title sorting key and
+ * a content preview (nothing for locked notes) used by lists, while the old content column is emptied.
+ */
+CREATE
+	TABLE note_contents
+	(
+		note_id INTEGER PRIMARY KEY,
+		content TEXT
+	);
+INSERT INTO note_contents (note_id, content) SELECT creation, content FROM notes;
+ALTER TABLE notes ADD COLUMN title_sort TEXT;
+ALTER TABLE notes ADD COLUMN preview TEXT;
+UPDATE notes SET title_sort = SUBSTR(title || content, 1, 200), preview = CASE WHEN locked = 1 THEN '' ELSE SUBSTR(LTRIM(content, CAST(X'20090A0D' AS TEXT)), 1, 600) END;
+UPDATE notes SET content = NULL;
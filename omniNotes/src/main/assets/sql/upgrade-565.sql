@@ -0,0 +1,14 @@
+/*
+ * Adds indexes matching notes filters and attachments lookups. Flags are normalized to 0 so that filters can use
+ * equality comparisons on indexed columns.
+ */
+UPDATE notes SET archived = 0 WHERE archived IS NOT 1;
+UPDATE notes SET trashed = 0 WHERE trashed IS NOT 1;
+UPDATE notes SET reminder_fired = 0 WHERE reminder_fired IS NOT 1;
+UPDATE notes SET locked = 0 WHERE locked IS NOT 1;
+UPDATE notes SET checklist = 0 WHERE checklist IS NOT 1;
+CREATE INDEX notes_trashed_archived ON notes(trashed, archived, category_id);
+CREATE INDEX notes_category ON notes(category_id, trashed);
+CREATE INDEX notes_alarm ON notes(alarm);
+CREATE INDEX notes_locked ON notes(locked);
+CREATE INDEX attachments_note_id ON attachments(note_id, attachment_id);
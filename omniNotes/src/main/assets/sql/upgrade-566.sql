@@ -0,0 +1,4 @@
+/*
+ * Attachments with identical content share the same file, which is looked up by uri to know if it's still used.
+ */
+CREATE INDEX attachments_uri ON attachments(uri);
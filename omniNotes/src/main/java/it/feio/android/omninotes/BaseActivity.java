@@ -21,13 +21,11 @@ import android.app.Activity;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
 import android.content.Context;
-import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.Typeface;
 import android.os.Bundle;
 import android.support.v4.app.FragmentTransaction;
-import android.support.v4.content.LocalBroadcastManager;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.KeyEvent;
@@ -159,7 +157,8 @@ public class BaseActivity extends AppCompatActivity {
 
 
     /**
-     * Notifies App Widgets about data changes so they can update theirselves
+     * Notifies App Widgets about data changes so they can update theirselves. Database writes are already
+     * notified through {@link it.feio.android.omninotes.db.DbHelper#observeTables(String...)}.
      */
     public static void notifyAppWidgets(Context context) {
         // Home widgets
@@ -167,9 +166,6 @@ public class BaseActivity extends AppCompatActivity {
         int[] ids = mgr.getAppWidgetIds(new ComponentName(context, ListWidgetProvider.class));
         Log.d(Constants.TAG, "Notifies AppWidget data changed for widgets " + Arrays.toString(ids));
         mgr.notifyAppWidgetViewDataChanged(ids, R.id.widget_list);
-
-        // Dashclock
-        LocalBroadcastManager.getInstance(context).sendBroadcast(new Intent(Constants.INTENT_UPDATE_DASHCLOCK));
     }
 
 
@@ -175,7 +175,6 @@ public class CategoryActivity extends AppCompatActivity implements ColorChooserD
                         db.deleteCategory(category);
 
                         EventBus.getDefault().post(new CategoriesUpdatedEvent());
-                        BaseActivity.notifyAppWidgets(OmniNotes.getAppContext());
 
                         setResult(RESULT_FIRST_USER);
                         finish();
@@ -214,6 +214,8 @@ public class DetailFragment extends BaseFragment implements OnReminderPickedList
 	private Note note;
 	private Note noteTmp;
 	private Note noteOriginal;
+	// Last saved state of the note being saved, null for new notes
+	private Note notePreviouslySaved;
 	// Audio recording
 	private String recordName;
 	private MediaRecorder mRecorder = null;
@@ -1463,11 +1465,14 @@ public class DetailFragment extends BaseFragment implements OnReminderPickedList
 	private void discard() {
 		// Checks if some new files have been attached and must be removed
 		if (!noteTmp.getAttachmentsList().equals(note.getAttachmentsList())) {
+			List<Attachment> newAttachments = new ArrayList<>();
 			for (Attachment newAttachment : noteTmp.getAttachmentsList()) {
 				if (!note.getAttachmentsList().contains(newAttachment)) {
-					StorageHelper.delete(mainActivity, newAttachment.getUri().getPath());
+					newAttachments.add(newAttachment);
 				}
 			}
+			// Files identical to the ones of other attachments are shared with them
+			AttachmentsHelper.deleteUnusedFiles(mainActivity, newAttachments, note.getAttachmentsList());
 		}
 
 		goBack = true;
@@ -1478,9 +1483,10 @@ public class DetailFragment extends BaseFragment implements OnReminderPickedList
 				mainActivity.deleteNote(noteTmp);
 				goHome();
 			} else {
-				new SaveNoteTask(this, false).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, noteOriginal);
+				notePreviouslySaved = new Note(note);
+				new SaveNoteTask(this, false, notePreviouslySaved).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR,
+						noteOriginal);
 			}
-			MainActivity.notifyAppWidgets(mainActivity);
 		} else {
 			goHome();
 		}
@@ -1516,8 +1522,6 @@ public class DetailFragment extends BaseFragment implements OnReminderPickedList
 		if (trash) {
 			ShortcutHelper.removeshortCut(OmniNotes.getAppContext(), noteTmp);
 			ReminderHelper.removeReminder(OmniNotes.getAppContext(), noteTmp);
-		} else {
-			ReminderHelper.addReminder(OmniNotes.getAppContext(), note);
 		}
 		saveNote(this);
 	}
@@ -1574,9 +1578,10 @@ public class DetailFragment extends BaseFragment implements OnReminderPickedList
 		}
 
 		noteTmp.setAttachmentsListOld(note.getAttachmentsList());
+		notePreviouslySaved = note.get_id() != null ? new Note(note) : null;
 
-		new SaveNoteTask(mOnNoteSaved, lastModificationUpdatedNeeded()).executeOnExecutor(AsyncTask
-				.THREAD_POOL_EXECUTOR, noteTmp);
+		new SaveNoteTask(mOnNoteSaved, lastModificationUpdatedNeeded(), notePreviouslySaved).executeOnExecutor
+				(AsyncTask.THREAD_POOL_EXECUTOR, noteTmp);
 	}
 
 	/**
@@ -1604,9 +1609,11 @@ public class DetailFragment extends BaseFragment implements OnReminderPickedList
 
 	@Override
 	public void onNoteSaved(Note noteSaved) {
-		MainActivity.notifyAppWidgets(OmniNotes.getAppContext());
+		// Posted also while pausing to keep navigation counters aligned
+		EventBus.getDefault().post(new NotesUpdatedEvent(Collections.singletonList(noteSaved),
+				Collections.singletonList(notePreviouslySaved)));
+		notePreviouslySaved = null;
 		if (!activityPausing) {
-			EventBus.getDefault().post(new NotesUpdatedEvent(Collections.singletonList(noteSaved)));
 			deleteMergedNotes(mergedNotesIds);
 			if (noteTmp.getAlarm() != null && !noteTmp.getAlarm().equals(note.getAlarm())) {
 				ReminderHelper.showReminderMessage(noteTmp.getAlarm());
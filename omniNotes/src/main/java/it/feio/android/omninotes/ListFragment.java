@@ -27,10 +27,11 @@ import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.drawable.AnimationDrawable;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.OperationCanceledException;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
 import android.support.v4.util.Pair;
@@ -79,12 +80,15 @@ import butterknife.ButterKnife;
 import de.greenrobot.event.EventBus;
 import de.keyboardsurfer.android.widget.crouton.Crouton;
 import de.keyboardsurfer.android.widget.crouton.Style;
-import it.feio.android.omninotes.async.notes.NoteLoaderTask;
+import it.feio.android.omninotes.async.notes.NoteProcessor;
 import it.feio.android.omninotes.async.notes.NoteProcessorArchive;
 import it.feio.android.omninotes.async.notes.NoteProcessorCategorize;
 import it.feio.android.omninotes.async.notes.NoteProcessorDelete;
+import it.feio.android.omninotes.async.notes.NoteProcessorEmptyTrash;
 import it.feio.android.omninotes.async.notes.NoteProcessorTrash;
+import it.feio.android.omninotes.async.notes.NotesQuery;
 import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.db.NotesPage;
 import it.feio.android.omninotes.helpers.NotesHelper;
 import it.feio.android.omninotes.models.Category;
 import it.feio.android.omninotes.models.Note;
@@ -99,6 +103,8 @@ import it.feio.android.omninotes.models.views.Fab;
 import it.feio.android.omninotes.models.views.InterceptorLinearLayout;
 import it.feio.android.pixlui.links.UrlCompleter;
 import it.feio.android.simplegallery.util.BitmapUtils;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
 
 import static android.support.v4.view.ViewCompat.animate;
 
@@ -156,6 +162,9 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
     private boolean searchLabelActive = false;
 
     private NoteAdapter listAdapter;
+    private NotesPage notesPage;
+    private Subscription notesSubscription;
+    private boolean notesQueryLoaded;
     private UndoBarController ubc;
     private Fab fab;
     private MainActivity mainActivity;
@@ -171,6 +180,13 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
     }
 
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        stopLoadingNotes();
+    }
+
+
     @Override
     public void onDestroy() {
         super.onDestroy();
@@ -495,7 +511,7 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
     private ImageView getZoomListItemView(View view, Note note) {
         if (expandedImageView != null) {
             View targetView = null;
-            if (note.getAttachmentsList().size() > 0) {
+            if (note.getFirstAttachment() != null) {
                 targetView = view.findViewById(R.id.attachmentThumbnail);
             }
             if (targetView == null && note.getCategory() != null) {
@@ -677,7 +693,8 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
 								searchPerformed && mFragment.isAdded()) {
 							searchTags = null;
 							searchQuery = pattern;
-							NoteLoaderTask.getInstance().execute("getNotesByPattern", pattern);
+							notesPage = null;
+							loadNotes((db, signal) -> db.getNotesByPattern(pattern, signal));
 							return true;
 						} else {
 							searchPerformed = true;
@@ -958,7 +975,7 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
             restoreListScrollPosition();
 			toggleSearchLabel(false);
             // Updates app widgets
-            mainActivity.updateWidgets();
+            BaseActivity.notifyAppWidgets(mainActivity);
         } else {
 			((OmniNotes) getActivity().getApplication()).getAnalyticsHelper().trackActionFromResourceId(getActivity(),
 					item.getItemId());
@@ -967,7 +984,7 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
 
 
     /**
-     * Empties trash deleting all the notes
+     * Empties trash deleting all the notes, also the ones not loaded in the list yet
      */
     private void emptyTrash() {
         new MaterialDialog.Builder(mainActivity)
@@ -977,26 +994,59 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
                     @Override
                     public void onClick(
                             @NonNull MaterialDialog dialog, @NonNull DialogAction which) {
-                        boolean mustDeleteLockedNotes = false;
-                        for (int i = 0; i < listAdapter.getCount(); i++) {
-                            selectedNotes.add(listAdapter.getItem(i));
-                            mustDeleteLockedNotes = mustDeleteLockedNotes || listAdapter.getItem(i).isLocked();
-                        }
-                        if (mustDeleteLockedNotes) {
-                            mainActivity.requestPassword(mainActivity, getSelectedNotes(),
-                                    passwordConfirmed -> {
-                                        if (passwordConfirmed.equals(PasswordValidator.Result.SUCCEED)  ) {
-                                            deleteNotesExecute();
-                                        }
-                                    });
-                        } else {
-                            deleteNotesExecute();
-                        }
+                        mainActivity.requestPassword(mainActivity, DbHelper.getInstance().getNotesTrashedLocked(),
+                                passwordConfirmed -> {
+                                    if (passwordConfirmed.equals(PasswordValidator.Result.SUCCEED)) {
+                                        emptyTrashExecute();
+                                    }
+                                });
                     }
                 }).build().show();
     }
 
 
+    private void emptyTrashExecute() {
+        listAdapter.setNotesPage(null);
+        listAdapter.clear();
+        deleteNotesWithProgress(new NoteProcessorEmptyTrash(), true);
+        list.clearChoices();
+        selectedNotes.clear();
+        finishActionMode();
+        list.setEmptyView(empyListItem);
+    }
+
+
+    /**
+     * Runs a permanent notes deletion showing its progress in a dialog that lets the user cancel it. A canceled
+     * deletion leaves all the notes untouched, so they're loaded again into the list.
+     */
+    private void deleteNotesWithProgress(NoteProcessor processor, boolean indeterminate) {
+        MaterialDialog progressDialog = new MaterialDialog.Builder(mainActivity)
+                .content(R.string.working)
+                .progress(indeterminate, 0, true)
+                .cancelable(false)
+                .negativeText(R.string.cancel)
+                .onNegative((dialog, which) -> {
+                    processor.cancel();
+                    initNotesList(mainActivity.getIntent());
+                })
+                .build();
+        processor.setOnNotesProcessedListener((processed, total) -> {
+            if (!progressDialog.isShowing()) {
+                return;
+            }
+            if (processed < total) {
+                progressDialog.setMaxProgress(total);
+                progressDialog.setProgress(processed);
+            } else {
+                progressDialog.dismiss();
+                mainActivity.showMessage(R.string.note_deleted, ONStyle.ALERT);
+            }
+        }).process();
+        progressDialog.show();
+    }
+
+
     /**
      * Notes list adapter initialization and association to view
 	 * @FIXME: This method is a divine opprobrium and MUST be refactored. I'm ashamed by myself.
@@ -1028,20 +1078,23 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
             // Using tags
             if (searchTags != null && intent.getStringExtra(SearchManager.QUERY) == null) {
                 searchQuery = searchTags;
-                NoteLoaderTask.getInstance().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, "getNotesByTag",
-                        searchQuery);
+                notesPage = null;
+                String tags = searchQuery;
+                loadNotes((db, signal) -> db.getNotesByTag(tags, signal));
             } else if (searchUncompleteChecklists || Constants.ACTION_SEARCH_UNCOMPLETE_CHECKLISTS.equals(intent.getAction())) {
 				searchQuery = getContext().getResources().getString(R.string.uncompleted_checklists);
 				searchUncompleteChecklists = true;
-				NoteLoaderTask.getInstance().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, "getNotesByUncompleteChecklist");
+				notesPage = null;
+				loadNotes((db, signal) -> db.getNotesByUncompleteChecklist(signal));
             } else {
                 // Get the intent, verify the action and get the query
                 if (intent.getStringExtra(SearchManager.QUERY) != null) {
                     searchQuery = intent.getStringExtra(SearchManager.QUERY);
                     searchTags = null;
                 }
-                NoteLoaderTask.getInstance().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, "getNotesByPattern",
-                        searchQuery);
+                notesPage = null;
+                String pattern = searchQuery;
+                loadNotes((db, signal) -> db.getNotesByPattern(pattern, signal));
             }
 
             toggleSearchLabel(true);
@@ -1059,21 +1112,79 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
                     mainActivity.navigationTmp = !TextUtils.isEmpty(categoryId) ? categoryId : null;
                 }
                 intent.removeExtra(Constants.INTENT_WIDGET);
-				if (mainActivity.navigationTmp != null) {
-                    Long categoryId = Long.parseLong(mainActivity.navigationTmp);
-                    NoteLoaderTask.getInstance().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR,
-                            "getNotesByCategory", categoryId);
-				} else {
-                    NoteLoaderTask.getInstance().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, "getAllNotes", true);
-				}
+				Long categoryId = mainActivity.navigationTmp != null ? Long.parseLong(mainActivity.navigationTmp) : null;
+				loadNotesPage(categoryId);
 
             } else {
-                NoteLoaderTask.getInstance().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, "getAllNotes", true);
+                loadNotesPage(null);
             }
         }
     }
 
 
+    /**
+     * Loads the first notes page, big enough to restore the previous scroll position. Following pages are
+     * retrieved by the adapter while scrolling.
+     */
+    private void loadNotesPage(Long categoryId) {
+        loadNotes((db, signal) -> {
+            // Each execution starts again from the first page
+            NotesPage page = new NotesPage(categoryId, listViewPosition + NotesPage.DEFAULT_SIZE);
+            List<Note> notes = db.getNotesPage(page, signal);
+            if (!signal.isCanceled()) {
+                notesPage = page;
+            }
+            return notes;
+        });
+    }
+
+
+    /**
+     * Shows notes retrieved by the given query, which is executed again each time notes, attachments or categories
+     * are written until another one is requested. Requesting a new query aborts the running one inside SQLite.
+     */
+    private void loadNotes(NotesQuery query) {
+        stopLoadingNotes();
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        notesQueryLoaded = false;
+        notesSubscription = DbHelper.getInstance().createQuery(db -> runNotesQuery(query, db, cancellationSignal),
+                DbHelper.TABLE_NOTES, DbHelper.TABLE_ATTACHMENTS, DbHelper.TABLE_CATEGORY)
+                .filter(notes -> notes != null)
+                .observeOn(AndroidSchedulers.mainThread())
+                .doOnUnsubscribe(cancellationSignal::cancel)
+                .subscribe(notes -> {
+                    // Reloading while notes are selected or changes are waiting for undo would discard them, the
+                    // write that follows the action will trigger another reload anyway
+                    if (notesQueryLoaded && (getActionMode() != null || !undoNotesMap.isEmpty())) {
+                        return;
+                    }
+                    if (notesQueryLoaded) {
+                        refreshListScrollPosition();
+                    }
+                    notesQueryLoaded = true;
+                    EventBus.getDefault().post(new NotesLoadedEvent(new ArrayList<>(notes)));
+                });
+    }
+
+
+    private static List<Note> runNotesQuery(NotesQuery query, DbHelper dbHelper, CancellationSignal signal) {
+        try {
+            return query.run(dbHelper, signal);
+        } catch (OperationCanceledException e) {
+            Log.d(Constants.TAG, "Notes loading canceled");
+            return null;
+        }
+    }
+
+
+    private void stopLoadingNotes() {
+        if (notesSubscription != null) {
+            notesSubscription.unsubscribe();
+            notesSubscription = null;
+        }
+    }
+
+
     public void toggleSearchLabel(boolean activate) {
         if (activate) {
             searchQueryView.setText(Html.fromHtml(getString(R.string.search) + ":<b> " + searchQuery + "</b>"));
@@ -1113,15 +1224,11 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
     }
 
 
-    public void onEvent(CategoriesUpdatedEvent categoriesUpdatedEvent) {
-        initNotesList(mainActivity.getIntent());
-    }
-
-
     public void onEvent(NotesLoadedEvent notesLoadedEvent) {
         int layoutSelected = prefs.getBoolean(Constants.PREF_EXPANDED_VIEW, true) ? R.layout.note_layout_expanded
                 : R.layout.note_layout;
         listAdapter = new NoteAdapter(mainActivity, layoutSelected, notesLoadedEvent.notes);
+        listAdapter.setNotesPage(notesPage);
 
         View noteLayout = LayoutInflater.from(mainActivity).inflate(layoutSelected, null, false);
         noteViewHolder = new NoteViewHolder(noteLayout);
@@ -1280,20 +1387,22 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
 
 
     /**
-     * Selects all notes in list
+     * Selects all notes in list, retrieving first the ones not loaded yet
      */
     private void selectAllNotes() {
-        for (int i = 0; i < list.getChildCount(); i++) {
-            LinearLayout v = (LinearLayout) list.getChildAt(i).findViewById(R.id.card_layout);
-			v.setBackgroundColor(getResources().getColor(R.color.list_bg_selected));
-        }
-        selectedNotes.clear();
-        for (int i = 0; i < listAdapter.getCount(); i++) {
-            selectedNotes.add(listAdapter.getItem(i));
-            listAdapter.addSelectedItem(i);
-        }
-        prepareActionModeMenu();
-        setCabTitle();
+        listAdapter.loadAllPages(loadedNotes -> {
+            for (int i = 0; i < list.getChildCount(); i++) {
+                LinearLayout v = (LinearLayout) list.getChildAt(i).findViewById(R.id.card_layout);
+                v.setBackgroundColor(getResources().getColor(R.color.list_bg_selected));
+            }
+            selectedNotes.clear();
+            for (int i = 0; i < listAdapter.getCount(); i++) {
+                selectedNotes.add(listAdapter.getItem(i));
+                listAdapter.addSelectedItem(i);
+            }
+            prepareActionModeMenu();
+            setCabTitle();
+        });
     }
 
 
@@ -1320,14 +1429,13 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
      */
     private void deleteNotesExecute() {
         listAdapter.remove(getSelectedNotes());
-        new NoteProcessorDelete(getSelectedNotes()).process();
+        deleteNotesWithProgress(new NoteProcessorDelete(getSelectedNotes()), false);
         list.clearChoices();
         selectedNotes.clear();
         finishActionMode();
         // If list is empty again Mr Jingles will appear again
         if (listAdapter.getCount() == 0)
             list.setEmptyView(empyListItem);
-        mainActivity.showMessage(R.string.note_deleted, ONStyle.ALERT);
     }
 
 
@@ -1671,7 +1779,6 @@ public class ListFragment extends BaseFragment implements OnViewTouchedListener,
 
             Log.d(Constants.TAG, "Changes committed");
         }
-        mainActivity.updateWidgets();
     }
 
 
@@ -23,7 +23,6 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.support.v4.app.Fragment;
@@ -49,7 +48,6 @@ import de.greenrobot.event.EventBus;
 import de.keyboardsurfer.android.widget.crouton.Crouton;
 import de.keyboardsurfer.android.widget.crouton.Style;
 import edu.emory.mathcs.backport.java.util.Arrays;
-import it.feio.android.omninotes.async.UpdateWidgetsTask;
 import it.feio.android.omninotes.async.UpdaterTask;
 import it.feio.android.omninotes.async.bus.PasswordRemovedEvent;
 import it.feio.android.omninotes.async.bus.SwitchFragmentEvent;
@@ -61,6 +59,7 @@ import it.feio.android.omninotes.models.Attachment;
 import it.feio.android.omninotes.models.Category;
 import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.models.ONStyle;
+import it.feio.android.omninotes.models.misc.DynamicNavigationLookupTable;
 import it.feio.android.omninotes.utils.Constants;
 import it.feio.android.omninotes.utils.FileProviderHelper;
 import it.feio.android.omninotes.utils.PasswordHelper;
@@ -105,6 +104,7 @@ public class MainActivity extends BaseActivity implements OnDateSetListener, OnT
 	@Override
 	protected void onResume() {
 		super.onResume();
+		DynamicNavigationLookupTable.reconcile();
 		if (isPasswordAccepted) {
 			init();
 		} else {
@@ -348,7 +348,7 @@ public class MainActivity extends BaseActivity implements OnDateSetListener, OnT
         if (receivedIntent(i)) {
             Note note = i.getParcelableExtra(Constants.INTENT_NOTE);
             if (note == null) {
-                note = DbHelper.getInstance().getNote(i.getIntExtra(Constants.INTENT_KEY, 0));
+                note = DbHelper.getInstance().getNote(i.getLongExtra(Constants.INTENT_KEY, 0));
             }
             // Checks if the same note is already opened to avoid to open again
             if (note != null && noteAlreadyOpened(note)) {
@@ -505,17 +505,10 @@ public class MainActivity extends BaseActivity implements OnDateSetListener, OnT
      */
     public void deleteNote(Note note) {
         new NoteProcessorDelete(Arrays.asList(new Note[]{note})).process();
-        BaseActivity.notifyAppWidgets(this);
         Log.d(Constants.TAG, "Deleted permanently note with id '" + note.get_id() + "'");
     }
 
 
-    public void updateWidgets() {
-        new UpdateWidgetsTask(getApplicationContext())
-                .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-    }
-
-
     public void showMessage(int messageId, Style style) {
         showMessage(getString(messageId), style);
     }
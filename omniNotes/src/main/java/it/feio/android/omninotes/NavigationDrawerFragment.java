@@ -36,10 +36,15 @@ import de.greenrobot.event.EventBus;
 import it.feio.android.omninotes.async.CategoryMenuTask;
 import it.feio.android.omninotes.async.MainMenuTask;
 import it.feio.android.omninotes.async.bus.*;
+import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.models.Category;
 import it.feio.android.omninotes.models.NavigationItem;
 import it.feio.android.omninotes.utils.Constants;
 import it.feio.android.omninotes.utils.Display;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+
+import java.util.List;
 
 
 public class NavigationDrawerFragment extends Fragment {
@@ -51,6 +56,8 @@ public class NavigationDrawerFragment extends Fragment {
     DrawerLayout mDrawerLayout;
     private MainActivity mActivity;
     private boolean alreadyInitialized;
+    private List<Category> categories;
+    private Subscription categoriesSubscription;
 
 
     @Override
@@ -64,6 +71,13 @@ public class NavigationDrawerFragment extends Fragment {
     public void onStart() {
         super.onStart();
         EventBus.getDefault().register(this);
+        // Categories menu is rebuilt only when categories or their notes change
+        categoriesSubscription = DbHelper.getInstance().observeCategories()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(categories -> {
+                    this.categories = categories;
+                    buildCategoriesMenu();
+                });
     }
 
 
@@ -71,6 +85,7 @@ public class NavigationDrawerFragment extends Fragment {
     public void onStop() {
         super.onStop();
         EventBus.getDefault().unregister(this);
+        categoriesSubscription.unsubscribe();
     }
 
 
@@ -103,6 +118,8 @@ public class NavigationDrawerFragment extends Fragment {
 
 
     public void onEvent(CategoriesUpdatedEvent event) {
+        // Categories are read again instead of waiting for the observed query to be triggered
+        categories = null;
         refreshMenus();
     }
 
@@ -209,7 +226,7 @@ public class NavigationDrawerFragment extends Fragment {
 
 
     private void buildCategoriesMenu() {
-        CategoryMenuTask task = new CategoryMenuTask(this);
+        CategoryMenuTask task = new CategoryMenuTask(this, categories);
         task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
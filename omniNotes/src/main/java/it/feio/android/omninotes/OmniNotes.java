@@ -23,6 +23,7 @@ import android.content.res.Configuration;
 import android.os.StrictMode;
 import android.support.annotation.NonNull;
 import android.support.multidex.MultiDexApplication;
+import android.util.Log;
 
 import com.squareup.leakcanary.LeakCanary;
 
@@ -37,9 +38,16 @@ import it.feio.android.analitica.AnalyticsHelperFactory;
 import it.feio.android.analitica.MockAnalyticsHelper;
 import it.feio.android.analitica.exceptions.AnalyticsInstantiationException;
 import it.feio.android.analitica.exceptions.InvalidIdentifierException;
+import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.helpers.LanguageHelper;
 import it.feio.android.omninotes.utils.Constants;
+import it.feio.android.omninotes.utils.ReminderHelper;
 import it.feio.android.omninotes.utils.notifications.NotificationsHelper;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 
 @AcraCore(buildConfigClass = BuildConfig.class)
@@ -48,6 +56,8 @@ import it.feio.android.omninotes.utils.notifications.NotificationsHelper;
 @AcraToast(resText = R.string.crash_toast)
 public class OmniNotes extends MultiDexApplication {
 
+	private static final int RESUBSCRIPTION_DELAY = 5;
+
 	static SharedPreferences prefs;
 	private static Context mContext;
 	private AnalyticsHelper analyticsHelper;
@@ -92,6 +102,26 @@ public class OmniNotes extends MultiDexApplication {
 		}
 
 		new NotificationsHelper(this).initNotificationChannels();
+
+		// Home widgets are refreshed only when data they show changes
+		subscribeForever(DbHelper.getInstance(this).observeTables(DbHelper.TABLE_NOTES, DbHelper.TABLE_ATTACHMENTS,
+				DbHelper.TABLE_CATEGORY)
+				.doOnNext(tables -> BaseActivity.notifyAppWidgets(this)), "refreshing widgets");
+		// Single reminders alarm is kept on the earliest pending reminder, armed at startup also after upgrades
+		subscribeForever(DbHelper.getInstance(this).observeTables(DbHelper.TABLE_NOTES)
+				.startWith(Collections.<String>emptySet())
+				.observeOn(Schedulers.io())
+				.doOnNext(tables -> ReminderHelper.scheduleNextReminder(this)), "scheduling next reminder");
+	}
+
+	/**
+	 * Keeps an application wide subscription alive: errors are logged and the observable is subscribed again after a
+	 * delay, so a failing write notification doesn't stop the following ones from being handled
+	 */
+	private static void subscribeForever(Observable<?> observable, String description) {
+		observable.doOnError(e -> Log.e(Constants.TAG, "Error " + description + ", subscribing again", e))
+				.retryWhen(errors -> errors.delay(RESUBSCRIPTION_DELAY, TimeUnit.SECONDS))
+				.subscribe();
 	}
 
 	/**
@@ -41,6 +41,7 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ListView;
 import android.widget.TextView;
@@ -59,7 +60,9 @@ import java.util.List;
 
 import it.feio.android.analitica.AnalyticsHelper;
 import it.feio.android.omninotes.async.DataBackupIntentService;
+import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.helpers.AppVersionHelper;
+import it.feio.android.omninotes.helpers.BackupArchiveHelper;
 import it.feio.android.omninotes.helpers.BackupHelper;
 import it.feio.android.omninotes.helpers.LanguageHelper;
 import it.feio.android.omninotes.helpers.PermissionsHelper;
@@ -199,17 +202,16 @@ public class SettingsFragment extends PreferenceFragment {
 //		Preference backupIntegrityCheck = findPreference("settings_backup_integrity_check");
 //		if (backupIntegrityCheck != null) {
 //			backupIntegrityCheck.setOnPreferenceClickListener(arg0 -> {
-//				List<LinkedList<DiffMatchPatch.Diff>> errors = BackupHelper.integrityCheck(StorageHelper
+//				BackupHelper.IntegrityCheckResult result = BackupHelper.integrityCheck(StorageHelper
 //						.getBackupDir(ConstantsBase.AUTO_BACKUP_DIR));
-//				if (errors.isEmpty()) {
+//				if (result.isOk()) {
 //					new MaterialDialog.Builder(activity)
 //							.content("Everything is ok")
 //							.positiveText(R.string.ok)
 //							.build().show();
 //				} else {
-//					DiffMatchPatch diffMatchPatch = new DiffMatchPatch();
-//					String content = Observable.from(errors).map(diffs -> diffMatchPatch.diffPrettyHtml(diffs) +
-//							"<br/>").toList().toBlocking().first().toString();
+//					String content = "Mismatching notes: " + result.getMismatchingNotes() + "<br/>Corrupt attachments: "
+//							+ result.getCorruptAttachments();
 //					View v = getActivity().getLayoutInflater().inflate(R.layout.webview, null);
 //					((WebView) v.findViewById(R.id.webview)).loadData(content, "text/html", null);
 //					new MaterialDialog.Builder(activity)
@@ -511,8 +513,8 @@ public class SettingsFragment extends PreferenceFragment {
 						.positiveText(R.string.confirm)
 						.onPositive((dialog, which) -> {
                             prefs.edit().clear().apply();
-                            File db = getActivity().getDatabasePath(Constants.DATABASE_NAME);
-                            StorageHelper.delete(getActivity(), db.getAbsolutePath());
+                            DbHelper.closeDatabase();
+                            getActivity().deleteDatabase(Constants.DATABASE_NAME);
                             File attachmentsDir = StorageHelper.getAttachmentDir();
                             StorageHelper.delete(getActivity(), attachmentsDir.getAbsolutePath());
                             File cacheDir = StorageHelper.getCacheDir(getActivity());
@@ -683,6 +685,7 @@ public class SettingsFragment extends PreferenceFragment {
 		String fileName = sdf.format(Calendar.getInstance().getTime());
 		final EditText fileNameEditText = v.findViewById(R.id.export_file_name);
 		final TextView backupExistingTextView = v.findViewById(R.id.backup_existing);
+		final CheckBox singleFileCheckBox = v.findViewById(R.id.backup_single_file);
 		fileNameEditText.setHint(fileName);
 		fileNameEditText.addTextChangedListener(new TextWatcher() {
 			@Override
@@ -700,7 +703,8 @@ public class SettingsFragment extends PreferenceFragment {
 			@Override
 			public void afterTextChanged(Editable arg0) {
 
-				if (backups.contains(arg0.toString())) {
+				if (backups.contains(arg0.toString())
+						|| backups.contains(arg0.toString() + BackupArchiveHelper.ARCHIVE_EXTENSION)) {
 					backupExistingTextView.setText(R.string.backup_existing);
 				} else {
 					backupExistingTextView.setText("");
@@ -716,7 +720,7 @@ public class SettingsFragment extends PreferenceFragment {
 					((OmniNotes)getActivity().getApplication()).getAnalyticsHelper().trackEvent(AnalyticsHelper.CATEGORIES.SETTING, "settings_export_data");
 					String backupName = StringUtils.isEmpty(fileNameEditText.getText().toString()) ?
 							fileNameEditText.getHint().toString() : fileNameEditText.getText().toString();
-					BackupHelper.startBackupService(backupName);
+					BackupHelper.startBackupService(backupName, singleFileCheckBox.isChecked());
 				}).build().show();
 	}
 
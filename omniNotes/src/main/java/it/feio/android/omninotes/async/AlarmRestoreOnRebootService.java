@@ -23,12 +23,7 @@ import android.support.annotation.NonNull;
 import android.support.v4.app.JobIntentService;
 import android.util.Log;
 
-import java.util.List;
-
 import it.feio.android.omninotes.BaseActivity;
-import it.feio.android.omninotes.OmniNotes;
-import it.feio.android.omninotes.db.DbHelper;
-import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.utils.Constants;
 import it.feio.android.omninotes.utils.ReminderHelper;
 
@@ -48,11 +43,7 @@ public class AlarmRestoreOnRebootService extends JobIntentService {
 
 		BaseActivity.notifyAppWidgets(mContext);
 
-		List<Note> notes = DbHelper.getInstance().getNotesWithReminderNotFired();
-		Log.d(Constants.TAG, "Found " + notes.size() + " reminders");
-		for (Note note : notes) {
-			ReminderHelper.addReminder(OmniNotes.getAppContext(), note);
-		}
+		ReminderHelper.scheduleNextReminder(mContext);
 	}
 
 }
@@ -22,11 +22,13 @@ import android.os.AsyncTask;
 import android.support.v4.app.Fragment;
 import android.text.TextUtils;
 import it.feio.android.omninotes.OmniNotes;
+import it.feio.android.omninotes.helpers.AttachmentsHelper;
 import it.feio.android.omninotes.models.Attachment;
 import it.feio.android.omninotes.models.listeners.OnAttachingFileListener;
 import it.feio.android.omninotes.utils.StorageHelper;
 
 import java.lang.ref.WeakReference;
+import java.util.Collections;
 
 
 public class AttachmentTask extends AsyncTask<Void, Void, Attachment> {
@@ -67,7 +69,8 @@ public class AttachmentTask extends AsyncTask<Void, Void, Attachment> {
             }
         } else {
             if (mAttachment != null) {
-                StorageHelper.delete(OmniNotes.getAppContext(), mAttachment.getUri().getPath());
+                AttachmentsHelper.deleteUnusedFiles(OmniNotes.getAppContext(), Collections.singletonList
+                        (mAttachment), Collections.<Attachment>emptyList());
             }
         }
     }
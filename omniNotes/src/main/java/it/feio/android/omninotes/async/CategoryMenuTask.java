@@ -43,15 +43,20 @@ public class CategoryMenuTask extends AsyncTask<Void, Void, List<Category>> {
 
     private final WeakReference<Fragment> mFragmentWeakReference;
     private final MainActivity mainActivity;
+    private List<Category> categories;
     private NonScrollableListView mDrawerCategoriesList;
     private View settingsView;
     private View settingsViewCat;
     private NonScrollableListView mDrawerList;
 
 
-    public CategoryMenuTask(Fragment mFragment) {
+    /**
+     * @param categories Categories to be shown, retrieved from database if null
+     */
+    public CategoryMenuTask(Fragment mFragment, List<Category> categories) {
         mFragmentWeakReference = new WeakReference<>(mFragment);
         this.mainActivity = (MainActivity) mFragment.getActivity();
+        this.categories = categories;
     }
 
 
@@ -120,7 +125,9 @@ public class CategoryMenuTask extends AsyncTask<Void, Void, List<Category>> {
 
     private List<Category> buildCategoryMenu() {
 
-        List<Category> categories = DbHelper.getInstance().getCategories();
+        if (categories == null) {
+            categories = DbHelper.getInstance().getCategories();
+        }
 
         View settings = categories.isEmpty() ? settingsView : settingsViewCat;
         if (settings == null) return categories;
@@ -30,10 +30,10 @@ import it.feio.android.omninotes.MainActivity;
 import it.feio.android.omninotes.OmniNotes;
 import it.feio.android.omninotes.R;
 import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.helpers.BackupArchiveHelper;
 import it.feio.android.omninotes.helpers.BackupHelper;
 import it.feio.android.omninotes.helpers.SpringImportHelper;
 import it.feio.android.omninotes.models.Attachment;
-import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.models.listeners.OnAttachingFileListener;
 import it.feio.android.omninotes.utils.Constants;
 import it.feio.android.omninotes.utils.ReminderHelper;
@@ -45,6 +45,8 @@ public class DataBackupIntentService extends IntentService implements OnAttachin
 
     public final static String INTENT_BACKUP_NAME = "backup_name";
     public final static String INTENT_BACKUP_INCLUDE_SETTINGS = "backup_include_settings";
+    public final static String INTENT_BACKUP_INCREMENTAL = "backup_incremental";
+    public final static String INTENT_BACKUP_ARCHIVE = "backup_archive";
     public final static String ACTION_DATA_EXPORT = "action_data_export";
     public final static String ACTION_DATA_IMPORT = "action_data_import";
     public final static String ACTION_DATA_IMPORT_LEGACY = "action_data_import_legacy";
@@ -100,28 +102,43 @@ public class DataBackupIntentService extends IntentService implements OnAttachin
 
 	synchronized private void exportData(Intent intent) {
 
-        boolean result = true;
+        boolean result;
 
-        // Gets backup folder
         String backupName = intent.getStringExtra(INTENT_BACKUP_NAME);
-        File backupDir = StorageHelper.getBackupDir(backupName);
+        boolean includeSettings = intent.getBooleanExtra(INTENT_BACKUP_INCLUDE_SETTINGS, true);
 
-        // Directory clean in case of previously used backup name
-        StorageHelper.delete(this, backupDir.getAbsolutePath());
+        if (intent.getBooleanExtra(INTENT_BACKUP_ARCHIVE, false)) {
+            // Single file backup is written all at once
+            result = BackupArchiveHelper.exportArchive(BackupArchiveHelper.getArchive(backupName), includeSettings,
+                    mNotificationsHelper);
+        } else {
+            result = exportFolder(backupName, includeSettings, intent.getBooleanExtra(INTENT_BACKUP_INCREMENTAL,
+                    false));
+        }
+
+        String notificationMessage = result ? getString(R.string.data_export_completed) : getString(R.string.data_export_failed);
+        mNotificationsHelper.finish(intent, notificationMessage);
+    }
 
-        // Directory is re-created in case of previously used backup name (removed above)
-        backupDir = StorageHelper.getBackupDir(backupName);
 
-		BackupHelper.exportNotes(backupDir);
+    private boolean exportFolder(String backupName, boolean includeSettings, boolean incremental) {
 
-        result = BackupHelper.exportAttachments(backupDir, mNotificationsHelper);
+        // Gets backup folder
+        File backupDir = StorageHelper.getBackupDir(backupName);
 
-        if (intent.getBooleanExtra(INTENT_BACKUP_INCLUDE_SETTINGS, true)) {
-			BackupHelper.exportSettings(backupDir);
+        // Previously used backup name is updated with changes only, unless a full export is requested
+        if (!incremental) {
+            StorageHelper.delete(this, backupDir.getAbsolutePath());
+            // Directory is re-created in case of previously used backup name (removed above)
+            backupDir = StorageHelper.getBackupDir(backupName);
         }
 
-        String notificationMessage = result ? getString(R.string.data_export_completed) : getString(R.string.data_export_failed);
-        mNotificationsHelper.finish(intent, notificationMessage);
+        boolean result = BackupHelper.exportIncremental(backupDir, mNotificationsHelper);
+
+        if (includeSettings) {
+            BackupHelper.exportSettings(backupDir);
+        }
+        return result;
     }
 
 
@@ -131,23 +148,33 @@ public class DataBackupIntentService extends IntentService implements OnAttachin
 
         // Gets backup folder
         String backupName = intent.getStringExtra(INTENT_BACKUP_NAME);
-		File backupDir = importLegacy ? new File(backupName) : StorageHelper.getBackupDir(backupName);
-
-        BackupHelper.importSettings(backupDir);
+		File archive = new File(StorageHelper.getExternalStoragePublicDir(), backupName);
+		File backupDir;
+		boolean result = true;
 
-		if (importLegacy) {
-			BackupHelper.importDB(this, backupDir);
+		if (!importLegacy && BackupArchiveHelper.isArchive(archive)) {
+			backupDir = archive;
+			result = BackupArchiveHelper.importArchive(archive, mNotificationsHelper);
 		} else {
-			BackupHelper.importNotes(backupDir);
-		}
+			backupDir = importLegacy ? new File(backupName) : StorageHelper.getBackupDir(backupName);
+
+			BackupHelper.importSettings(backupDir);
 
-		BackupHelper.importAttachments(backupDir, mNotificationsHelper);
+			if (importLegacy) {
+				result = BackupHelper.importDB(this, backupDir);
+			} else {
+				BackupHelper.importNotes(backupDir);
+			}
+
+			result &= BackupHelper.importAttachments(backupDir, mNotificationsHelper);
+		}
 
 		resetReminders();
 
 		mNotificationsHelper.cancel();
 
-        createNotification(intent, this, getString(R.string.data_import_completed), getString(R.string.click_to_refresh_application), backupDir);
+        String title = result ? getString(R.string.data_import_completed) : getString(R.string.data_import_failed);
+        createNotification(intent, this, title, getString(R.string.click_to_refresh_application), backupDir);
 
         // Performs auto-backup filling after backup restore
 //        if (prefs.getBoolean(Constants.PREF_ENABLE_AUTOBACKUP, false)) {
@@ -207,9 +234,7 @@ public class DataBackupIntentService extends IntentService implements OnAttachin
 	 */
 	private void resetReminders() {
 		Log.d(Constants.TAG, "Resettings reminders");
-		for (Note note : DbHelper.getInstance().getNotesWithReminderNotFired()) {
-			ReminderHelper.addReminder(OmniNotes.getAppContext(), note);
-		}
+		ReminderHelper.scheduleNextReminder(OmniNotes.getAppContext());
 	}
 
 
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2013-2019 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.async;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.v4.app.JobIntentService;
+import android.support.v4.app.NotificationCompat;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.feio.android.omninotes.MainActivity;
+import it.feio.android.omninotes.R;
+import it.feio.android.omninotes.SnoozeActivity;
+import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.db.ReminderQueries;
+import it.feio.android.omninotes.helpers.date.DateHelper;
+import it.feio.android.omninotes.models.Attachment;
+import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.services.NotificationListener;
+import it.feio.android.omninotes.utils.Constants;
+import it.feio.android.omninotes.utils.ReminderHelper;
+import it.feio.android.omninotes.utils.TextHelper;
+import it.feio.android.omninotes.utils.ThumbnailCache;
+import it.feio.android.omninotes.utils.notifications.NotificationChannels;
+import it.feio.android.omninotes.utils.notifications.NotificationsHelper;
+
+
+/**
+ * Fires together all the reminders that are due when an alarm is received, with a single database update and
+ * their notifications grouped under a summary that is the only one making sound.
+ */
+public class RemindersFiringService extends JobIntentService {
+
+	public static final int JOB_ID = 0x02;
+
+	private static final String REMINDERS_GROUP = "reminders";
+	private static final long REMINDERS_SUMMARY_ID = 0;
+
+	public static void enqueueWork(Context context, Intent work) {
+		enqueueWork(context, RemindersFiringService.class, JOB_ID, work);
+	}
+
+	@Override
+	protected void onHandleWork(@NonNull Intent intent) {
+		Context mContext = getApplicationContext();
+		boolean chained = Constants.ACTION_REMINDERS_CHAIN.equals(intent.getAction());
+		try {
+			if (chained) {
+				fireDueReminders(mContext);
+			} else {
+				fireReminders(mContext, getReminder(intent.getLongExtra(Constants.INTENT_KEY, 0)), false);
+			}
+		} catch (Exception e) {
+			Log.e(Constants.TAG, "Error on firing reminders", e);
+		} finally {
+			if (chained) {
+				ReminderHelper.scheduleNextReminder(mContext);
+			}
+		}
+	}
+
+
+	/**
+	 * Fires all the reminders become due since the chain last fired, including the ones whose alarm was delivered
+	 * late or replaced by another one armed meanwhile
+	 */
+	private void fireDueReminders(Context mContext) {
+		ReminderQueries reminderQueries = new ReminderQueries(DbHelper.getInstance());
+		fireReminders(mContext, reminderQueries.getDue(ReminderHelper.getRemindersFiredUntil(mContext) + 1), true);
+		ReminderHelper.setRemindersFiredUntil(mContext, reminderQueries.getNow());
+	}
+
+
+	/**
+	 * Reminders not bound to the saved ones (ex. snoozed) have their own alarm
+	 */
+	private List<Note> getReminder(long noteId) {
+		Note note = DbHelper.getInstance().getNote(noteId);
+		return note != null ? Collections.singletonList(note) : Collections.emptyList();
+	}
+
+
+	/**
+	 * @param chained True when firing saved reminders, which are moved to their next occurrence if recurrent. Snoozed
+	 *                recurrent reminders were already moved when first fired, so their pending occurrence is left
+	 *                untouched.
+	 */
+	private void fireReminders(Context mContext, List<Note> notes, boolean chained) {
+		if (notes.isEmpty()) {
+			return;
+		}
+
+		// When the listener is running reminders are marked as fired once their notification is dismissed
+		boolean markFired = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+				&& !NotificationListener.isRunning();
+		if (!chained) {
+			for (Note note : notes) {
+				markFired &= TextUtils.isEmpty(note.getRecurrenceRule());
+			}
+		}
+		Map<Long, Long> nextReminders = new HashMap<>();
+		for (Note note : notes) {
+			note.setArchived(false);
+			if (markFired) {
+				note.setReminderFired(true);
+			}
+			if (chained && !TextUtils.isEmpty(note.getRecurrenceRule())) {
+				Long nextReminder = DateHelper.nextReminderFromRecurrenceRule(Long.parseLong(note.getAlarm()), note
+						.getRecurrenceRule());
+				if (nextReminder != null && nextReminder > 0) {
+					nextReminders.put(note.get_id(), nextReminder);
+				}
+			}
+		}
+		DbHelper.getInstance().updateFiredReminders(notes, markFired, nextReminders);
+
+		SharedPreferences prefs = mContext.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_MULTI_PROCESS);
+		boolean grouped = notes.size() > 1;
+		for (Note note : notes) {
+			createNotification(mContext, prefs, note, grouped);
+		}
+		if (grouped) {
+			createSummaryNotification(mContext, prefs, notes);
+		}
+	}
+
+
+	private void createNotification(Context mContext, SharedPreferences prefs, Note note, boolean grouped) {
+
+		// Prepare text contents
+		Spanned[] titleAndContent = TextHelper.parseTitleAndContent(mContext, note);
+		String title = TextHelper.getAlternativeTitle(mContext, note, titleAndContent[0]);
+		String text = titleAndContent[1].toString();
+
+		Intent snoozeIntent = new Intent(mContext, SnoozeActivity.class);
+		snoozeIntent.setAction(Constants.ACTION_SNOOZE);
+		snoozeIntent.putExtra(Constants.INTENT_NOTE, (android.os.Parcelable) note);
+		PendingIntent piSnooze = PendingIntent.getActivity(mContext, getUniqueRequestCode(note), snoozeIntent,
+				PendingIntent.FLAG_UPDATE_CURRENT);
+
+		Intent postponeIntent = new Intent(mContext, SnoozeActivity.class);
+		postponeIntent.setAction(Constants.ACTION_POSTPONE);
+		postponeIntent.putExtra(Constants.INTENT_NOTE, (android.os.Parcelable) note);
+		PendingIntent piPostpone = PendingIntent.getActivity(mContext, getUniqueRequestCode(note), postponeIntent,
+				PendingIntent.FLAG_UPDATE_CURRENT);
+
+		String snoozeDelay = prefs.getString("settings_notification_snooze_delay", "10");
+
+		// Next create the bundle and initialize it
+		Intent intent = new Intent(mContext, SnoozeActivity.class);
+		Bundle bundle = new Bundle();
+		bundle.putParcelable(Constants.INTENT_NOTE, note);
+		intent.putExtras(bundle);
+
+		// Sets the Activity to start in a new, empty task
+		intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+		// Workaround to fix problems with multiple notifications
+		intent.setAction(Constants.ACTION_NOTIFICATION_CLICK + Long.toString(System.currentTimeMillis()));
+
+		// Creates the PendingIntent
+		PendingIntent notifyIntent = PendingIntent.getActivity(mContext, getUniqueRequestCode(note), intent,
+				PendingIntent.FLAG_UPDATE_CURRENT);
+
+		NotificationsHelper notificationsHelper = new NotificationsHelper(mContext);
+		notificationsHelper.createNotification(NotificationChannels.NotificationChannelNames.Reminders, R.drawable
+				.ic_stat_notification, title, notifyIntent).setLedActive().setMessage(text);
+
+		List<Attachment> attachments = note.getAttachmentsList();
+		if (!attachments.isEmpty() && !attachments.get(0).getMime_type().equals(Constants.MIME_TYPE_FILES)) {
+			notificationsHelper.setLargeIcon(ThumbnailCache.getThumbnail(mContext, attachments.get(0)));
+		}
+
+		notificationsHelper.getBuilder()
+				.addAction(R.drawable.ic_material_reminder_time_light, TextHelper.capitalize(mContext.getString(R.string.snooze)) + ": " + snoozeDelay, piSnooze)
+				.addAction(R.drawable.ic_remind_later_light, TextHelper.capitalize(mContext.getString(R.string
+								.add_reminder)), piPostpone);
+
+		if (grouped) {
+			// Only the summary alerts the user
+			notificationsHelper.getBuilder()
+					.setGroup(REMINDERS_GROUP)
+					.setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY);
+		} else {
+			setRingtone(prefs, notificationsHelper);
+			setVibrate(prefs, notificationsHelper);
+		}
+
+		notificationsHelper.show(note.get_id());
+	}
+
+
+	private void createSummaryNotification(Context mContext, SharedPreferences prefs, List<Note> notes) {
+		Intent intent = new Intent(mContext, MainActivity.class);
+		intent.setAction(Intent.ACTION_MAIN);
+		intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+		PendingIntent notifyIntent = PendingIntent.getActivity(mContext, 0, intent, PendingIntent
+				.FLAG_UPDATE_CURRENT);
+
+		NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle();
+		for (Note note : notes) {
+			Spanned[] titleAndContent = TextHelper.parseTitleAndContent(mContext, note);
+			inboxStyle.addLine(TextHelper.getAlternativeTitle(mContext, note, titleAndContent[0]));
+		}
+		String title = notes.size() + " " + mContext.getString(R.string.reminders);
+
+		NotificationsHelper notificationsHelper = new NotificationsHelper(mContext);
+		notificationsHelper.createNotification(NotificationChannels.NotificationChannelNames.Reminders, R.drawable
+				.ic_stat_notification, title, notifyIntent).setLedActive();
+		notificationsHelper.getBuilder()
+				.setStyle(inboxStyle)
+				.setGroup(REMINDERS_GROUP)
+				.setGroupSummary(true)
+				.setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY);
+
+		setRingtone(prefs, notificationsHelper);
+		setVibrate(prefs, notificationsHelper);
+
+		notificationsHelper.show(REMINDERS_SUMMARY_ID);
+	}
+
+
+	private void setRingtone(SharedPreferences prefs, NotificationsHelper notificationsHelper) {
+		String ringtone = prefs.getString("settings_notification_ringtone", null);
+		if (ringtone != null) notificationsHelper.setRingtone(ringtone);
+	}
+
+
+	private void setVibrate(SharedPreferences prefs, NotificationsHelper notificationsHelper) {
+		if (prefs.getBoolean("settings_notification_vibration", true)) notificationsHelper.setVibration();
+	}
+
+
+	private int getUniqueRequestCode(Note note) {
+		return note.get_id().intValue();
+	}
+}
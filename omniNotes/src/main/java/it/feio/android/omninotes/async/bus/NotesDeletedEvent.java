@@ -26,6 +26,7 @@ import java.util.List;
 
 public class NotesDeletedEvent {
 
+	// Deleted notes, null if not known (ex. when trash is emptied on database)
 	public List<Note> notes;
 
 
@@ -27,10 +27,18 @@ import java.util.List;
 public class NotesUpdatedEvent {
 
 	public List<Note> notes;
+	// State of the same notes before the update (null items for new notes), null if unknown
+	public List<Note> previousNotes;
 
 
 	public NotesUpdatedEvent(List<Note> notes) {
+		this(notes, null);
+	}
+
+
+	public NotesUpdatedEvent(List<Note> notes, List<Note> previousNotes) {
 		Log.d(Constants.TAG, this.getClass().getName());
 		this.notes = notes;
+		this.previousNotes = previousNotes;
 	}
 }
@@ -18,17 +18,30 @@
 package it.feio.android.omninotes.async.notes;
 
 import android.os.AsyncTask;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.util.Log;
 import de.greenrobot.event.EventBus;
 import it.feio.android.omninotes.async.bus.NotesUpdatedEvent;
+import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.models.listeners.OnNotesProcessedListener;
+import it.feio.android.omninotes.utils.Constants;
 
 import java.util.ArrayList;
 import java.util.List;
 
 
+/**
+ * Applies an operation to many notes at once: database is updated with set-based statements in a single
+ * transaction, then note objects are aligned and a single event is posted.
+ */
 public abstract class NoteProcessor {
 
 	List<Note> notes;
+	List<Note> previousNotes = new ArrayList<>();
+	private final CancellationSignal cancellationSignal = new CancellationSignal();
+	private OnNotesProcessedListener onNotesProcessedListener;
 
 
 	protected NoteProcessor(List<Note> notes) {
@@ -36,20 +49,59 @@ public abstract class NoteProcessor {
 	}
 
 
+	/**
+	 * Sets a listener notified on main thread about processing progress. Once processing completed the listener is
+	 * notified a last time with processed count equal to total.
+	 */
+	public NoteProcessor setOnNotesProcessedListener(OnNotesProcessedListener onNotesProcessedListener) {
+		this.onNotesProcessedListener = onNotesProcessedListener;
+		return this;
+	}
+
+
 	public void process() {
 		NotesProcessorTask task = new NotesProcessorTask();
 		task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, notes);
 	}
 
 
+	/**
+	 * Stops processing. Database transaction is rolled back so no note is modified.
+	 */
+	public void cancel() {
+		cancellationSignal.cancel();
+	}
+
+
+	/**
+	 * Applies operation to all notes on database
+	 */
+	protected abstract void processNotes(DbHelper db, List<Note> notes, CancellationSignal cancellationSignal,
+										 OnNotesProcessedListener listener);
+
+
+	/**
+	 * Aligns a single note object to the operation already applied on database
+	 */
 	protected abstract void processNote(Note note);
 
 
-	class NotesProcessorTask extends AsyncTask<List<Note>, Void, List<Note>> {
+	class NotesProcessorTask extends AsyncTask<List<Note>, Integer, List<Note>> {
 
 		@Override
 		protected List<Note> doInBackground(List<Note>... params) {
 			List<Note> notes = params[0];
+			for (Note note : notes) {
+				previousNotes.add(getState(note));
+			}
+			try {
+				processNotes(DbHelper.getInstance(), notes, cancellationSignal, (processed, total) ->
+						publishProgress(processed, total));
+			} catch (OperationCanceledException e) {
+				Log.d(Constants.TAG, "Notes processing canceled");
+				cancel(false);
+				return null;
+			}
 			for (Note note : notes) {
 				processNote(note);
 			}
@@ -57,14 +109,42 @@ public abstract class NoteProcessor {
 		}
 
 
+		@Override
+		protected void onProgressUpdate(Integer... values) {
+			if (onNotesProcessedListener != null) {
+				onNotesProcessedListener.onNotesProcessed(values[0], values[1]);
+			}
+		}
+
+
 		@Override
 		protected void onPostExecute(List<Note> notes) {
 			afterProcess(notes);
+			if (onNotesProcessedListener != null) {
+				onNotesProcessedListener.onNotesProcessed(notes.size(), notes.size());
+			}
 		}
 	}
 
 
+	/**
+	 * Copies note's state used by events subscribers. Content is not copied to avoid loading whole notes when
+	 * processing summaries.
+	 */
+	private static Note getState(Note note) {
+		Note state = new Note();
+		state.setCreation(note.getCreation());
+		state.setLastModification(note.getLastModification());
+		state.setTitle(note.getTitle());
+		state.setArchived(note.isArchived());
+		state.setTrashed(note.isTrashed());
+		state.setAlarm(note.getAlarm());
+		state.setCategory(note.getCategory());
+		return state;
+	}
+
+
 	protected void afterProcess(List<Note> notes) {
-		EventBus.getDefault().post(new NotesUpdatedEvent(notes));
+		EventBus.getDefault().post(new NotesUpdatedEvent(notes, previousNotes));
 	}
 }
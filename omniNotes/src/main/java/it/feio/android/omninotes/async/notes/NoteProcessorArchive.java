@@ -17,11 +17,13 @@
 
 package it.feio.android.omninotes.async.notes;
 
+import android.os.CancellationSignal;
+
 import java.util.List;
 
 import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.models.Note;
-
+import it.feio.android.omninotes.models.listeners.OnNotesProcessedListener;
 
 public class NoteProcessorArchive extends NoteProcessor {
 
@@ -34,8 +36,15 @@ public class NoteProcessorArchive extends NoteProcessor {
     }
 
 
+    @Override
+    protected void processNotes(DbHelper db, List<Note> notes, CancellationSignal cancellationSignal,
+                                OnNotesProcessedListener listener) {
+        db.archiveNotes(notes, archive, cancellationSignal, listener);
+    }
+
+
     @Override
     protected void processNote(Note note) {
-        DbHelper.getInstance().archiveNote(note, archive);
+        note.setArchived(archive);
     }
 }
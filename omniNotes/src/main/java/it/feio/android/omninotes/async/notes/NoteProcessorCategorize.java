@@ -17,12 +17,14 @@
 
 package it.feio.android.omninotes.async.notes;
 
+import android.os.CancellationSignal;
+
 import java.util.List;
 
 import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.models.Category;
 import it.feio.android.omninotes.models.Note;
-
+import it.feio.android.omninotes.models.listeners.OnNotesProcessedListener;
 
 public class NoteProcessorCategorize extends NoteProcessor {
 
@@ -35,9 +37,15 @@ public class NoteProcessorCategorize extends NoteProcessor {
     }
 
 
+    @Override
+    protected void processNotes(DbHelper db, List<Note> notes, CancellationSignal cancellationSignal,
+                                OnNotesProcessedListener listener) {
+        db.categorizeNotes(notes, category, cancellationSignal, listener);
+    }
+
+
     @Override
     protected void processNote(Note note) {
         note.setCategory(category);
-        DbHelper.getInstance().updateNote(note, false);
     }
 }
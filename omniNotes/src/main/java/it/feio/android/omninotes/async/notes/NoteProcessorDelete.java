@@ -17,17 +17,20 @@
 
 package it.feio.android.omninotes.async.notes;
 
+import android.os.CancellationSignal;
 import de.greenrobot.event.EventBus;
 import it.feio.android.omninotes.OmniNotes;
 import it.feio.android.omninotes.async.bus.NotesDeletedEvent;
 import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.helpers.AttachmentsHelper;
 import it.feio.android.omninotes.models.Attachment;
 import it.feio.android.omninotes.models.Note;
-import it.feio.android.omninotes.utils.StorageHelper;
+import it.feio.android.omninotes.models.listeners.OnNotesProcessedListener;
+import it.feio.android.omninotes.utils.ThumbnailCache;
 
+import java.util.Collections;
 import java.util.List;
 
-
 public class NoteProcessorDelete extends NoteProcessor {
 
 
@@ -46,17 +49,31 @@ public class NoteProcessorDelete extends NoteProcessor {
 
 
 	@Override
-	protected void processNote(Note note) {
-		DbHelper db = DbHelper.getInstance();
-		if (db.deleteNote(note) && !keepAttachments) {
-			for (Attachment mAttachment : note.getAttachmentsList()) {
-				StorageHelper.deleteExternalStoragePrivateFile(OmniNotes.getAppContext(), mAttachment.getUri()
-						.getLastPathSegment());
-			}
+	protected void processNotes(DbHelper db, List<Note> notes, CancellationSignal cancellationSignal,
+								OnNotesProcessedListener listener) {
+		deleteFiles(db.deleteNotes(notes, keepAttachments, cancellationSignal, listener));
+	}
+
+
+	/**
+	 * Files are removed only once database deletion is committed and if not shared with remaining attachments.
+	 * Sharing is checked again since meanwhile new attachments may have started using them.
+	 */
+	void deleteFiles(List<Attachment> deletedAttachments) {
+		for (Attachment mAttachment : deletedAttachments) {
+			AttachmentsHelper.deleteFileIfUnused(OmniNotes.getAppContext(), mAttachment, Collections
+					.<Attachment>emptyList());
+			ThumbnailCache.remove(OmniNotes.getAppContext(), mAttachment);
 		}
 	}
 
 
+	@Override
+	protected void processNote(Note note) {
+		// Nothing to align, deleted notes are just removed by subscribers
+	}
+
+
 	@Override
 	protected void afterProcess(List<Note> notes) {
 		EventBus.getDefault().post(new NotesDeletedEvent(notes));
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2013-2019 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.async.notes;
+
+import android.os.CancellationSignal;
+import de.greenrobot.event.EventBus;
+import it.feio.android.omninotes.async.bus.NotesDeletedEvent;
+import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.models.listeners.OnNotesProcessedListener;
+
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Deletes all the trashed notes on database, including the ones not loaded by the list
+ */
+public class NoteProcessorEmptyTrash extends NoteProcessorDelete {
+
+
+	public NoteProcessorEmptyTrash() {
+		super(Collections.<Note>emptyList());
+	}
+
+
+	@Override
+	protected void processNotes(DbHelper db, List<Note> notes, CancellationSignal cancellationSignal,
+								OnNotesProcessedListener listener) {
+		deleteFiles(db.emptyTrash(cancellationSignal));
+	}
+
+
+	@Override
+	protected void afterProcess(List<Note> notes) {
+		EventBus.getDefault().post(new NotesDeletedEvent(null));
+	}
+
+}
@@ -17,15 +17,17 @@
 
 package it.feio.android.omninotes.async.notes;
 
+import android.os.CancellationSignal;
+
 import java.util.List;
 
 import it.feio.android.omninotes.OmniNotes;
 import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.models.listeners.OnNotesProcessedListener;
 import it.feio.android.omninotes.utils.ReminderHelper;
 import it.feio.android.omninotes.utils.ShortcutHelper;
 
-
 public class NoteProcessorTrash extends NoteProcessor {
 
     boolean trash;
@@ -37,14 +39,19 @@ public class NoteProcessorTrash extends NoteProcessor {
     }
 
 
+    @Override
+    protected void processNotes(DbHelper db, List<Note> notes, CancellationSignal cancellationSignal,
+                                OnNotesProcessedListener listener) {
+        db.trashNotes(notes, trash, cancellationSignal, listener);
+    }
+
+
     @Override
     protected void processNote(Note note) {
+        note.setTrashed(trash);
         if (trash) {
             ShortcutHelper.removeshortCut(OmniNotes.getAppContext(), note);
             ReminderHelper.removeReminder(OmniNotes.getAppContext(), note);
-        } else {
-            ReminderHelper.addReminder(OmniNotes.getAppContext(), note);
         }
-        DbHelper.getInstance().trashNote(note, trash);
     }
 }
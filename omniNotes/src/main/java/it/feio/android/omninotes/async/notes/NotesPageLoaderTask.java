@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2013-2019 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.async.notes;
+
+import android.os.AsyncTask;
+import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.db.NotesPage;
+import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.models.listeners.OnNotesPageLoaded;
+
+import java.util.List;
+
+
+/**
+ * Retrieves the following page of an already loaded notes list, or all the remaining notes
+ */
+public class NotesPageLoaderTask extends AsyncTask<Void, Void, List<Note>> {
+
+	private final NotesPage notesPage;
+	private final boolean remaining;
+	private final OnNotesPageLoaded mOnNotesPageLoaded;
+
+
+	public NotesPageLoaderTask(NotesPage notesPage, OnNotesPageLoaded mOnNotesPageLoaded) {
+		this(notesPage, false, mOnNotesPageLoaded);
+	}
+
+
+	/**
+	 * @param remaining True to retrieve all the notes not loaded yet instead of a single page
+	 */
+	public NotesPageLoaderTask(NotesPage notesPage, boolean remaining, OnNotesPageLoaded mOnNotesPageLoaded) {
+		super();
+		this.notesPage = notesPage;
+		this.remaining = remaining;
+		this.mOnNotesPageLoaded = mOnNotesPageLoaded;
+	}
+
+
+	@Override
+	protected List<Note> doInBackground(Void... params) {
+		return remaining
+				? DbHelper.getInstance().getNotesPageRemaining(notesPage, null)
+				: DbHelper.getInstance().getNotesPage(notesPage);
+	}
+
+
+	@Override
+	protected void onPostExecute(List<Note> notes) {
+		super.onPostExecute(notes);
+		mOnNotesPageLoaded.onNotesPageLoaded(notes);
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2013-2019 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.async.notes;
+
+import android.os.CancellationSignal;
+import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.models.Note;
+
+import java.util.List;
+
+
+/**
+ * Notes retrieval shown by the notes list. Implementations must pass the signal down to the query so that it's
+ * aborted by SQLite when a newer one supersedes it.
+ */
+public interface NotesQuery {
+
+	List<Note> run(DbHelper dbHelper, CancellationSignal cancellationSignal);
+}
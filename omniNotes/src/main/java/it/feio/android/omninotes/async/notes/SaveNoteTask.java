@@ -22,15 +22,18 @@ import android.os.AsyncTask;
 import android.util.Log;
 import it.feio.android.omninotes.OmniNotes;
 import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.helpers.AttachmentsHelper;
 import it.feio.android.omninotes.models.Attachment;
 import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.models.listeners.OnNoteSaved;
 import it.feio.android.omninotes.utils.Constants;
-import it.feio.android.omninotes.utils.ReminderHelper;
-import it.feio.android.omninotes.utils.StorageHelper;
+import it.feio.android.omninotes.utils.ThumbnailCache;
 import it.feio.android.omninotes.utils.date.DateUtils;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 
 public class SaveNoteTask extends AsyncTask<Note, Void, Note> {
@@ -38,6 +41,7 @@ public class SaveNoteTask extends AsyncTask<Note, Void, Note> {
 	private Context context;
 	private boolean updateLastModification = true;
 	private OnNoteSaved mOnNoteSaved;
+	private Note persistedNote;
 
 
 	public SaveNoteTask(boolean updateLastModification) {
@@ -46,10 +50,19 @@ public class SaveNoteTask extends AsyncTask<Note, Void, Note> {
 
 
 	public SaveNoteTask(OnNoteSaved mOnNoteSaved, boolean updateLastModification) {
+		this(mOnNoteSaved, updateLastModification, null);
+	}
+
+
+	/**
+	 * @param persistedNote Last saved state of the note, used to write only what has been changed since then
+	 */
+	public SaveNoteTask(OnNoteSaved mOnNoteSaved, boolean updateLastModification, Note persistedNote) {
 		super();
 		this.context = OmniNotes.getAppContext();
 		this.mOnNoteSaved = mOnNoteSaved;
 		this.updateLastModification = updateLastModification;
+		this.persistedNote = persistedNote;
 	}
 
 
@@ -57,45 +70,47 @@ public class SaveNoteTask extends AsyncTask<Note, Void, Note> {
 	protected Note doInBackground(Note... params) {
 		Note note = params[0];
 		purgeRemovedAttachments(note);
-		boolean reminderMustBeSet = DateUtils.isFuture(note.getAlarm());
-		if (reminderMustBeSet) {
+		if (DateUtils.isFuture(note.getAlarm())) {
 			note.setReminderFired(false);
+			prepareReminderThumbnail(note);
 		}
-		note = DbHelper.getInstance().updateNote(note, updateLastModification);
-		if (reminderMustBeSet) {
-			ReminderHelper.addReminder(context, note);
-		}
-		return note;
+		// Reminders alarm is armed again when notes are written
+		return DbHelper.getInstance().updateNote(note, persistedNote, updateLastModification);
 	}
 
 
 	private void purgeRemovedAttachments(Note note) {
-		List<Attachment> deletedAttachments = note.getAttachmentsListOld();
+		// Attachments are compared by id as instances change when app is restarted
+		Set<Long> attachmentsIds = new HashSet<>();
 		for (Attachment attachment : note.getAttachmentsList()) {
 			if (attachment.getId() != null) {
-				// Workaround to prevent deleting attachments if instance is changed (app restart)
-				if (deletedAttachments.indexOf(attachment) == -1) {
-					attachment = getFixedAttachmentInstance(deletedAttachments, attachment);
-				}
-				deletedAttachments.remove(attachment);
+				attachmentsIds.add(attachment.getId());
+			}
+		}
+		List<Attachment> deletedAttachments = new ArrayList<>();
+		for (Attachment attachment : note.getAttachmentsListOld()) {
+			if (!attachmentsIds.contains(attachment.getId())) {
+				deletedAttachments.add(attachment);
 			}
 		}
-		// Remove from database deleted attachments
+		// Remove from database deleted attachments, files are kept while shared with other attachments
+		AttachmentsHelper.deleteUnusedFiles(context, deletedAttachments, note.getAttachmentsList());
 		for (Attachment deletedAttachment : deletedAttachments) {
-			StorageHelper.delete(context, deletedAttachment.getUri().getPath());
+			ThumbnailCache.remove(context, deletedAttachment);
 			Log.d(Constants.TAG, "Removed attachment " + deletedAttachment.getUri());
 		}
 	}
 
 
-    private Attachment getFixedAttachmentInstance(List<Attachment> deletedAttachments, Attachment attachment) {
-        for (Attachment deletedAttachment : deletedAttachments) {
-            if (deletedAttachment.getId().equals(attachment.getId())) {
-				return deletedAttachment;
-			}
-        }
-        return attachment;
-    }
+	/**
+	 * Notification large icon is decoded now to keep reminder firing fast
+	 */
+	private void prepareReminderThumbnail(Note note) {
+		List<Attachment> attachments = note.getAttachmentsList();
+		if (!attachments.isEmpty() && !attachments.get(0).getMime_type().equals(Constants.MIME_TYPE_FILES)) {
+			ThumbnailCache.prepare(context, attachments.get(0));
+		}
+	}
 
 
 	@Override
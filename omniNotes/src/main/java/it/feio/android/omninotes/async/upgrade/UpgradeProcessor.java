@@ -18,6 +18,8 @@
 package it.feio.android.omninotes.async.upgrade;
 
 import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.text.TextUtils;
 import android.util.Log;
@@ -28,14 +30,13 @@ import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
-import it.feio.android.omninotes.OmniNotes;
 import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.models.Attachment;
-import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.utils.Constants;
-import it.feio.android.omninotes.utils.ReminderHelper;
 import it.feio.android.omninotes.utils.StorageHelper;
 
 
@@ -152,30 +153,27 @@ public class UpgradeProcessor {
 
 
 	/**
-	 * Reschedule reminders after upgrade
-	 */
-	private void onUpgradeTo482() {
-		for (Note note : DbHelper.getInstance().getNotesWithReminderNotFired()) {
-			ReminderHelper.addReminder(OmniNotes.getAppContext(), note);
-		}
-	}
-
-
-	/**
-	 * Ensures that no duplicates will be found during the creation-to-id transition
+	 * Ensures that no duplicates will be found during the creation-to-id transition. Notes are read with a raw query
+	 * as this runs before upgrade scripts bring the schema used by DbHelper's queries.
 	 */
 	private void onUpgradeTo501() {
-		List<Long> creations = new ArrayList<>();
-		for (Note note : DbHelper.getInstance().getAllNotes(false)) {
-			if (creations.contains(note.getCreation())) {
-
-				ContentValues values = new ContentValues();
-				values.put(DbHelper.KEY_CREATION, note.getCreation() + (long) (Math.random() * 999));
-				DbHelper.getInstance().getDatabase().update(DbHelper.TABLE_NOTES, values, DbHelper.KEY_TITLE +
-						" = ? AND " + DbHelper.KEY_CREATION + " = ? AND " + DbHelper.KEY_CONTENT + " = ?", new String[]{note
-						.getTitle(), String.valueOf(note.getCreation()), note.getContent()});
+		SQLiteDatabase db = DbHelper.getInstance().getDatabase();
+		Set<Long> creations = new HashSet<>();
+		Cursor cursor = db.rawQuery("SELECT " + DbHelper.KEY_CREATION + "," + DbHelper.KEY_TITLE + ","
+				+ DbHelper.KEY_CONTENT + " FROM " + DbHelper.TABLE_NOTES, null);
+		try {
+			while (cursor.moveToNext()) {
+				long creation = cursor.getLong(0);
+				if (!creations.add(creation)) {
+					ContentValues values = new ContentValues();
+					values.put(DbHelper.KEY_CREATION, creation + (long) (Math.random() * 999));
+					db.update(DbHelper.TABLE_NOTES, values, DbHelper.KEY_TITLE + " = ? AND " + DbHelper.KEY_CREATION
+							+ " = ? AND " + DbHelper.KEY_CONTENT + " = ?", new String[]{cursor.getString(1),
+							String.valueOf(creation), cursor.getString(2)});
+				}
 			}
-			creations.add(note.getCreation());
+		} finally {
+			cursor.close();
 		}
 	}
 
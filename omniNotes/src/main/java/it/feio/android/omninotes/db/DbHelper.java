@@ -20,22 +20,27 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.CancellationSignal;
+import android.text.TextUtils;
 import android.util.Log;
 
-import org.apache.commons.lang.StringEscapeUtils;
-
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import it.feio.android.omninotes.OmniNotes;
@@ -44,13 +49,22 @@ import it.feio.android.omninotes.helpers.NotesHelper;
 import it.feio.android.omninotes.models.Attachment;
 import it.feio.android.omninotes.models.Category;
 import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.models.NoteSummary;
 import it.feio.android.omninotes.models.Stats;
 import it.feio.android.omninotes.models.Tag;
+import it.feio.android.omninotes.models.listeners.OnNotesProcessedListener;
 import it.feio.android.omninotes.utils.AssetUtils;
 import it.feio.android.omninotes.utils.Constants;
 import it.feio.android.omninotes.utils.Navigation;
 import it.feio.android.omninotes.utils.Security;
+import it.feio.android.omninotes.utils.StorageHelper;
 import it.feio.android.omninotes.utils.TagsHelper;
+import it.feio.android.pixlui.links.UrlCompleter;
+import rx.Observable;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subjects.SerializedSubject;
 
 
 public class DbHelper extends SQLiteOpenHelper {
@@ -58,7 +72,7 @@ public class DbHelper extends SQLiteOpenHelper {
     // Database name
     private static final String DATABASE_NAME = Constants.DATABASE_NAME;
     // Database version aligned if possible to software version
-    private static final int DATABASE_VERSION = 560;
+    private static final int DATABASE_VERSION = 566;
     // Sql query file directory
     private static final String SQL_DIR = "sql";
 
@@ -81,6 +95,10 @@ public class DbHelper extends SQLiteOpenHelper {
     public static final String KEY_CATEGORY = "category_id";
     public static final String KEY_LOCKED = "locked";
     public static final String KEY_CHECKLIST = "checklist";
+    public static final String KEY_WORDS = "words";
+    public static final String KEY_CHARS = "chars";
+    public static final String KEY_TITLE_SORT = "title_sort";
+    public static final String KEY_PREVIEW = "preview";
 
     // Attachments table name
     public static final String TABLE_ATTACHMENTS = "attachments";
@@ -101,6 +119,50 @@ public class DbHelper extends SQLiteOpenHelper {
     public static final String KEY_CATEGORY_DESCRIPTION = "description";
     public static final String KEY_CATEGORY_COLOR = "color";
 
+    // Full-text search index table name (docid is the note's creation)
+    public static final String TABLE_NOTES_FTS = "notes_fts";
+
+    // Tags index table
+    public static final String TABLE_NOTE_TAGS = "note_tags";
+    // Tags index columns
+    public static final String KEY_NOTE_TAGS_NOTE_ID = "note_id";
+    public static final String KEY_NOTE_TAGS_TAG = "tag";
+
+    // Notes content table name, content is stored apart to keep notes rows small
+    public static final String TABLE_NOTE_CONTENTS = "note_contents";
+    // Notes content table columns
+    public static final String KEY_NOTE_CONTENTS_NOTE_ID = "note_id";
+
+    // Full-text search ranking weights for title and content columns
+    private static final double[] FTS_COLUMNS_WEIGHTS = {2.0, 1.0};
+
+    // Maximum number of notes ids bound to a single statement (SQLite variables limit is 999)
+    private static final int IDS_CHUNK_SIZE = 500;
+
+    // Position of the first column added to notes query, like the sorting value when paginating
+    private static final int ADDITIONAL_COLUMN_INDEX = 18;
+    // Chars of content retrieved for notes summaries, in excess of the ones shown to allow trimming
+    private static final int CONTENT_PREVIEW_LENGTH = 600;
+    // Chars of title and content kept as title sorting key
+    private static final int TITLE_SORT_LENGTH = 200;
+    // Content is always qualified because upgraded databases still have an emptied content column in notes table
+    private static final String STORED_CONTENT = TABLE_NOTE_CONTENTS + "." + KEY_CONTENT;
+    private static final String NOTE_CONTENTS_JOIN = " LEFT JOIN " + TABLE_NOTE_CONTENTS + " ON " + TABLE_NOTE_CONTENTS
+            + "." + KEY_NOTE_CONTENTS_NOTE_ID + " = " + TABLE_NOTES + "." + KEY_ID + " ";
+    private static final int FIRST_ATTACHMENT_COLUMNS = 6;
+    // Number of query results kept in memory
+    private static final int QUERY_CACHE_SIZE = 32;
+    // Window in which subsequent writes are coalesced before observed queries are executed again
+    private static final long QUERY_TRIGGER_WINDOW = 300;
+    private static final String[] ALL_TABLES = {TABLE_NOTES, TABLE_ATTACHMENTS, TABLE_CATEGORY, TABLE_NOTE_TAGS};
+
+    /**
+     * Notes data retrieved by queries: whole notes, notes without attachments or summaries for lists
+     */
+    private enum Projection {
+        FULL, WITHOUT_ATTACHMENTS, SUMMARY
+    }
+
     // Queries
     private static final String CREATE_QUERY = "create.sql";
     private static final String UPGRADE_QUERY_PREFIX = "upgrade-";
@@ -111,7 +173,15 @@ public class DbHelper extends SQLiteOpenHelper {
     private final SharedPreferences prefs;
 
     private static DbHelper instance = null;
+	private static boolean instanceClosed = false;
+	// Tables written by each operation. Shared among instances to keep subscribers alive when database is reopened.
+	private static final SerializedSubject<Set<String>, Set<String>> tableTriggers = new SerializedSubject<>(
+			PublishSubject.create());
 	private SQLiteDatabase db;
+	// Compiled statements of hot single-value operations, reused for the whole helper's life
+	private final Map<String, SQLiteStatement> statements = new HashMap<>();
+	// Results of recently executed queries, invalidated by each write
+	private final QueryCache queryCache = new QueryCache(QUERY_CACHE_SIZE);
 
 
 	public static synchronized DbHelper getInstance() {
@@ -122,6 +192,11 @@ public class DbHelper extends SQLiteOpenHelper {
 	public static synchronized DbHelper getInstance(Context context) {
         if (instance == null) {
             instance = new DbHelper(context);
+            // Database could have been replaced while closed (ex. restore)
+            if (instanceClosed) {
+                instanceClosed = false;
+                tableTriggers.onNext(new HashSet<>(Arrays.asList(ALL_TABLES)));
+            }
         }
         return instance;
     }
@@ -129,17 +204,35 @@ public class DbHelper extends SQLiteOpenHelper {
 
 	public static synchronized DbHelper getInstance(boolean forcedNewInstance) {
 		if (instance == null || forcedNewInstance) {
-            Context context = instance.mContext == null ? OmniNotes.getAppContext() : instance.mContext;
+            Context context = instance == null || instance.mContext == null ? OmniNotes.getAppContext() : instance
+					.mContext;
+			closeDatabase();
 			instance = new DbHelper(context);
 		}
 		return instance;
 	}
 
 
+	/**
+	 * Closes the shared connection to let database file to be safely replaced or deleted (ex. legacy backup
+	 * restore, data reset). Next {@link #getInstance()} call will reopen it.
+	 */
+	public static synchronized void closeDatabase() {
+		if (instance != null) {
+			instance.close();
+			instance = null;
+			instanceClosed = true;
+		}
+	}
+
+
     private DbHelper(Context mContext) {
         super(mContext, DATABASE_NAME, null, DATABASE_VERSION);
         this.mContext = mContext;
         this.prefs = mContext.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_MULTI_PROCESS);
+        // Connection is kept open for the whole app lifecycle: with write-ahead logging readers get their own
+        // pooled connections and are not blocked by writes
+        setWriteAheadLoggingEnabled(true);
     }
 
 
@@ -147,6 +240,100 @@ public class DbHelper extends SQLiteOpenHelper {
         return DATABASE_NAME;
     }
 
+
+	@Override
+	public synchronized void close() {
+		synchronized (statements) {
+			for (SQLiteStatement statement : statements.values()) {
+				statement.close();
+			}
+			statements.clear();
+		}
+		super.close();
+	}
+
+
+	/**
+	 * Returns the compiled statement for the given SQL, compiling it only the first time
+	 */
+	private SQLiteStatement getStatement(String sql) {
+		synchronized (statements) {
+			SQLiteStatement statement = statements.get(sql);
+			if (statement == null) {
+				statement = getDatabase(true).compileStatement(sql);
+				statements.put(sql, statement);
+			}
+			return statement;
+		}
+	}
+
+
+	public QueryCache getQueryCache() {
+		return queryCache;
+	}
+
+
+	/**
+	 * Invalidates cached results and notifies observed queries reading from the written tables
+	 */
+	private void notifyTablesChanged(String... tables) {
+		queryCache.invalidate();
+		tableTriggers.onNext(new HashSet<>(Arrays.asList(tables)));
+	}
+
+
+	/**
+	 * Emits the written tables each time one of the given tables is modified. Writes happening close together are
+	 * coalesced and only the last one is reported.
+	 */
+	public Observable<Set<String>> observeTables(String... tables) {
+		Set<String> observedTables = new HashSet<>(Arrays.asList(tables));
+		return tableTriggers
+				.filter(changedTables -> !Collections.disjoint(changedTables, observedTables))
+				.debounce(QUERY_TRIGGER_WINDOW, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Creates an observable query executed on subscription and then again on background thread each time one of the
+	 * tables it reads from is written. Query is always run on the current instance so subscribers survive database
+	 * reopening.
+	 *
+	 * @param query  Query to be executed
+	 * @param tables Tables read by the query
+	 */
+	public <T> Observable<T> createQuery(Func1<DbHelper, T> query, String... tables) {
+		return observeTables(tables)
+				.startWith(Collections.<String>emptySet())
+				.observeOn(Schedulers.io())
+				.map(changedTables -> query.call(getInstance()));
+	}
+
+
+	public Observable<List<Category>> observeCategories() {
+		return createQuery(DbHelper::getCategories, TABLE_CATEGORY, TABLE_NOTES);
+	}
+
+
+	public Observable<List<Note>> observeNotesActive() {
+		return createQuery(DbHelper::getNotesActive, TABLE_NOTES, TABLE_ATTACHMENTS, TABLE_CATEGORY);
+	}
+
+
+	private Cursor rawQuery(String sql, Object[] args) {
+		return rawQuery(sql, args, null);
+	}
+
+
+	/**
+	 * Runs a query that will be aborted by SQLite itself, throwing {@link android.os.OperationCanceledException},
+	 * when the given signal is canceled
+	 */
+	private Cursor rawQuery(String sql, Object[] args, CancellationSignal cancellationSignal) {
+		return getDatabase().rawQueryWithFactory(QueryBuilder.getCursorFactory(args), sql, null, null,
+				cancellationSignal);
+	}
+
 	public SQLiteDatabase getDatabase() {
 		return getDatabase(false);
 	}
@@ -179,6 +366,7 @@ public class DbHelper extends SQLiteOpenHelper {
 
         try {
 
+            // Runs before upgrade scripts, so its steps must not rely on the schema used by this class' queries
             UpgradeProcessor.process(oldVersion, newVersion);
 
             for (String sqlFile : AssetUtils.list(SQL_DIR, mContext.getAssets())) {
@@ -190,6 +378,11 @@ public class DbHelper extends SQLiteOpenHelper {
                     }
                 }
             }
+
+            // Tags are parsed by the app so the index table created by upgrade script is filled here
+            if (oldVersion < 563) {
+                rebuildTagsIndex(db);
+            }
             Log.i(Constants.TAG, "Database upgrade successful");
 
         } catch (IOException |InvocationTargetException | IllegalAccessException e) {
@@ -200,62 +393,327 @@ public class DbHelper extends SQLiteOpenHelper {
 
     // Inserting or updating single note
     public Note updateNote(Note note, boolean updateLastModification) {
+        return updateNote(note, null, updateLastModification);
+    }
+
+
+    /**
+     * Saves a note. When its last persisted state is known only changed columns and attachments are written,
+     * otherwise the whole row is replaced.
+     *
+     * @param persistedNote State of the note as it was last saved or retrieved, null if unknown
+     */
+    public Note updateNote(Note note, Note persistedNote, boolean updateLastModification) {
         SQLiteDatabase db = getDatabase(true);
 
-        String content = note.isLocked()
-                ? Security.encrypt(note.getContent(), prefs.getString(Constants.PREF_PASSWORD, ""))
-                : note.getContent();
+        long now = Calendar.getInstance().getTimeInMillis();
+        long creation = note.getCreation() != null ? note.getCreation() : now;
+        long lastModification = updateLastModification || note.getLastModification() == null ? now : note
+                .getLastModification();
 
         // To ensure note and attachments insertions are atomical and boost performances transaction are used
-        db.beginTransaction();
+        db.beginTransactionNonExclusive();
+        try {
+            boolean deltaWritten = persistedNote != null && note.get_id() != null
+                    && note.get_id().equals(persistedNote.get_id())
+                    && updateChangedColumns(note, persistedNote, updateLastModification ? lastModification : null, db);
+            if (!deltaWritten) {
+                replaceNote(note, creation, lastModification, db);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            notifyTablesChanged(TABLE_NOTES, TABLE_ATTACHMENTS, TABLE_NOTE_TAGS);
+        }
+        // Saved attachments files are now protected from deletion by their rows
+        StorageHelper.releaseAttachmentsFiles(note.getAttachmentsList());
+        Log.d(Constants.TAG, "Updated note titled '" + note.getTitle() + "'");
+
+        // Fill the note with correct data before returning it
+        note.setCreation(creation);
+        note.setLastModification(lastModification);
+
+        return note;
+    }
 
+
+    /**
+     * Writes the whole note row, its indexes and all its attachments
+     */
+    private void replaceNote(Note note, long creation, long lastModification, SQLiteDatabase db) {
+        boolean locked = isTrue(note.isLocked());
+        String storedContent = getStoredContent(note);
         ContentValues values = new ContentValues();
         values.put(KEY_TITLE, note.getTitle());
-        values.put(KEY_CONTENT, content);
-        values.put(KEY_CREATION, note.getCreation() != null ? note.getCreation() : Calendar.getInstance()
-                .getTimeInMillis());
-        values.put(KEY_LAST_MODIFICATION, updateLastModification ? Calendar
-                .getInstance().getTimeInMillis() : (note.getLastModification() != null ? note.getLastModification() :
-                Calendar
-                        .getInstance().getTimeInMillis()));
-        values.put(KEY_ARCHIVED, note.isArchived());
-        values.put(KEY_TRASHED, note.isTrashed());
+        values.put(KEY_TITLE_SORT, getTitleSort(note.getTitle(), storedContent));
+        values.put(KEY_PREVIEW, getPreview(note.getContent(), locked));
+        values.put(KEY_CREATION, creation);
+        values.put(KEY_LAST_MODIFICATION, lastModification);
+        values.put(KEY_ARCHIVED, isTrue(note.isArchived()));
+        values.put(KEY_TRASHED, isTrue(note.isTrashed()));
         values.put(KEY_REMINDER, note.getAlarm());
-        values.put(KEY_REMINDER_FIRED, note.isReminderFired());
+        values.put(KEY_REMINDER_FIRED, isTrue(note.isReminderFired()));
         values.put(KEY_RECURRENCE_RULE, note.getRecurrenceRule());
         values.put(KEY_LATITUDE, note.getLatitude());
         values.put(KEY_LONGITUDE, note.getLongitude());
         values.put(KEY_ADDRESS, note.getAddress());
-        values.put(KEY_CATEGORY, note.getCategory() != null ? note.getCategory().getId() : null);
-        boolean locked = note.isLocked() != null ? note.isLocked() : false;
+        values.put(KEY_CATEGORY, getCategoryId(note));
         values.put(KEY_LOCKED, locked);
-        boolean checklist = note.isChecklist() != null ? note.isChecklist() : false;
-        values.put(KEY_CHECKLIST, checklist);
+        values.put(KEY_CHECKLIST, isTrue(note.isChecklist()));
+        values.put(KEY_WORDS, NotesHelper.getWords(note));
+        values.put(KEY_CHARS, NotesHelper.getChars(note));
+        db.insertWithOnConflict(TABLE_NOTES, KEY_ID, values, SQLiteDatabase.CONFLICT_REPLACE);
+        updateNoteContent(creation, storedContent, db);
+
+        // Locked notes are indexed by title only to avoid exposing their content through searches
+        updateNoteFts(creation, note.getTitle(), locked ? "" : note.getContent(), db);
+        updateNoteTags(creation, note, db);
+
+        // Updating attachments and removing from database deleted ones
+        Set<Long> attachmentsIds = new HashSet<>();
+        for (Attachment attachment : note.getAttachmentsList()) {
+            updateAttachment(note.get_id() != null ? note.get_id() : creation, attachment, db);
+            attachmentsIds.add(attachment.getId());
+        }
+        List<Long> deletedAttachmentsIds = new ArrayList<>();
+        for (Attachment attachment : note.getAttachmentsListOld()) {
+            if (!attachmentsIds.contains(attachment.getId())) {
+                deletedAttachmentsIds.add(attachment.getId());
+            }
+        }
+        deleteAttachments(deletedAttachmentsIds, db);
+    }
+
 
-		db.insertWithOnConflict(TABLE_NOTES, KEY_ID, values, SQLiteDatabase.CONFLICT_REPLACE);
-		Log.d(Constants.TAG, "Updated note titled '" + note.getTitle() + "'");
+    /**
+     * Writes only the columns, indexes and attachments of the note that differ from its persisted state
+     *
+     * @param lastModification New modification date, null to keep the persisted one
+     * @return False if note's row doesn't exist anymore and must be entirely written
+     */
+    private boolean updateChangedColumns(Note note, Note persistedNote, Long lastModification, SQLiteDatabase db) {
+        String[] noteId = new String[]{String.valueOf(note.get_id())};
+        ContentValues values = new ContentValues();
+
+        boolean titleChanged = !TextUtils.equals(note.getTitle(), persistedNote.getTitle());
+        boolean contentChanged = !TextUtils.equals(note.getContent(), persistedNote.getContent());
+        boolean locked = isTrue(note.isLocked());
+        boolean lockedChanged = locked != isTrue(persistedNote.isLocked());
+        // Content is encrypted again only if it's part of something that has changed
+        String storedContent = titleChanged || contentChanged || lockedChanged ? getStoredContent(note) : null;
+        if (titleChanged) {
+            values.put(KEY_TITLE, note.getTitle());
+        }
+        if (contentChanged || lockedChanged) {
+            values.put(KEY_PREVIEW, getPreview(note.getContent(), locked));
+            values.put(KEY_LOCKED, locked);
+        }
+        if (titleChanged || contentChanged || lockedChanged) {
+            values.put(KEY_TITLE_SORT, getTitleSort(note.getTitle(), storedContent));
+        }
+        if (titleChanged || contentChanged) {
+            values.put(KEY_WORDS, NotesHelper.getWords(note));
+            values.put(KEY_CHARS, NotesHelper.getChars(note));
+        }
+        if (lastModification != null) {
+            values.put(KEY_LAST_MODIFICATION, lastModification);
+        }
+        if (isTrue(note.isArchived()) != isTrue(persistedNote.isArchived())) {
+            values.put(KEY_ARCHIVED, isTrue(note.isArchived()));
+        }
+        if (isTrue(note.isTrashed()) != isTrue(persistedNote.isTrashed())) {
+            values.put(KEY_TRASHED, isTrue(note.isTrashed()));
+        }
+        if (!TextUtils.equals(note.getAlarm(), persistedNote.getAlarm())) {
+            values.put(KEY_REMINDER, note.getAlarm());
+        }
+        if (isTrue(note.isReminderFired()) != isTrue(persistedNote.isReminderFired())) {
+            values.put(KEY_REMINDER_FIRED, isTrue(note.isReminderFired()));
+        }
+        if (!TextUtils.equals(note.getRecurrenceRule(), persistedNote.getRecurrenceRule())) {
+            values.put(KEY_RECURRENCE_RULE, note.getRecurrenceRule());
+        }
+        if (!equal(note.getLatitude(), persistedNote.getLatitude())
+                || !equal(note.getLongitude(), persistedNote.getLongitude())) {
+            values.put(KEY_LATITUDE, note.getLatitude());
+            values.put(KEY_LONGITUDE, note.getLongitude());
+        }
+        if (!TextUtils.equals(note.getAddress(), persistedNote.getAddress())) {
+            values.put(KEY_ADDRESS, note.getAddress());
+        }
+        if (!equal(getCategoryId(note), getCategoryId(persistedNote))) {
+            values.put(KEY_CATEGORY, getCategoryId(note));
+        }
+        if (isTrue(note.isChecklist()) != isTrue(persistedNote.isChecklist())) {
+            values.put(KEY_CHECKLIST, isTrue(note.isChecklist()));
+        }
+
+        boolean exists = values.size() > 0
+                ? db.update(TABLE_NOTES, values, KEY_ID + " = ?", noteId) > 0
+                : DatabaseUtils.queryNumEntries(db, TABLE_NOTES, KEY_ID + " = ?", noteId) > 0;
+        if (!exists) {
+            return false;
+        }
 
-        // Updating attachments
-        List<Attachment> deletedAttachments = note.getAttachmentsListOld();
+        if (contentChanged || lockedChanged) {
+            updateNoteContent(note.get_id(), storedContent, db);
+        }
+        if (titleChanged || contentChanged || lockedChanged) {
+            updateNoteFts(note.get_id(), note.getTitle(), locked ? "" : note.getContent(), db);
+        }
+        if (titleChanged || contentChanged || lockedChanged) {
+            updateNoteTags(note.get_id(), note, db);
+        }
+
+        // Attachments are never modified once added, so they're just compared by id
+        Set<Long> persistedAttachmentsIds = new HashSet<>();
+        for (Attachment attachment : persistedNote.getAttachmentsList()) {
+            persistedAttachmentsIds.add(attachment.getId());
+        }
+        for (Attachment attachment : note.getAttachmentsListOld()) {
+            persistedAttachmentsIds.add(attachment.getId());
+        }
         for (Attachment attachment : note.getAttachmentsList()) {
-			updateAttachment(note.get_id() != null ? note.get_id() : values.getAsLong(KEY_CREATION), attachment, db);
-			deletedAttachments.remove(attachment);
+            if (!persistedAttachmentsIds.remove(attachment.getId())) {
+                updateAttachment(note.get_id(), attachment, db);
+            }
         }
-        // Remove from database deleted attachments
-        for (Attachment attachmentDeleted : deletedAttachments) {
-            db.delete(TABLE_ATTACHMENTS, KEY_ATTACHMENT_ID + " = ?",
-                    new String[]{String.valueOf(attachmentDeleted.getId())});
+        deleteAttachments(persistedAttachmentsIds, db);
+        return true;
+    }
+
+
+    private String getStoredContent(Note note) {
+        return isTrue(note.isLocked())
+                ? Security.encrypt(note.getContent(), prefs.getString(Constants.PREF_PASSWORD, ""))
+                : note.getContent();
+    }
+
+
+    /**
+     * Notes are sorted by title and, when they have the same title, by content. Like SQL concatenation the key
+     * is null if any of them is null.
+     */
+    private static String getTitleSort(String title, String storedContent) {
+        if (title == null || storedContent == null) {
+            return null;
         }
+        String titleSort = title + storedContent;
+        return titleSort.length() > TITLE_SORT_LENGTH ? titleSort.substring(0, TITLE_SORT_LENGTH) : titleSort;
+    }
 
-        db.setTransactionSuccessful();
-        db.endTransaction();
-		db.close();
 
-        // Fill the note with correct data before returning it
-        note.setCreation(note.getCreation() != null ? note.getCreation() : values.getAsLong(KEY_CREATION));
-        note.setLastModification(values.getAsLong(KEY_LAST_MODIFICATION));
+    /**
+     * First chars of content shown in lists, nothing is shown for locked notes
+     */
+    private static String getPreview(String content, boolean locked) {
+        if (locked) {
+            return "";
+        }
+        if (content == null) {
+            return null;
+        }
+        int start = 0;
+        while (start < content.length() && " \t\n\r".indexOf(content.charAt(start)) >= 0) {
+            start++;
+        }
+        return content.substring(start, Math.min(content.length(), start + CONTENT_PREVIEW_LENGTH));
+    }
 
-        return note;
+
+    private static Long getCategoryId(Note note) {
+        return note.getCategory() != null ? note.getCategory().getId() : null;
+    }
+
+
+    private static boolean isTrue(Boolean value) {
+        return value != null && value;
+    }
+
+
+    private static boolean equal(Object value, Object otherValue) {
+        return value == null ? otherValue == null : value.equals(otherValue);
+    }
+
+
+    private void deleteAttachments(Collection<Long> attachmentsIds, SQLiteDatabase db) {
+        if (attachmentsIds.isEmpty()) {
+            return;
+        }
+        String[] ids = new String[attachmentsIds.size()];
+        int i = 0;
+        for (Long attachmentId : attachmentsIds) {
+            ids[i++] = String.valueOf(attachmentId);
+        }
+        db.delete(TABLE_ATTACHMENTS, KEY_ATTACHMENT_ID + " IN (" + getPlaceholders(ids.length) + ")", ids);
+    }
+
+
+    private void updateNoteContent(long noteId, String storedContent, SQLiteDatabase db) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_NOTE_CONTENTS_NOTE_ID, noteId);
+        values.put(KEY_CONTENT, storedContent);
+        db.insertWithOnConflict(TABLE_NOTE_CONTENTS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+
+    /**
+     * Keeps full-text search index aligned with note's searchable text
+     */
+    private void updateNoteFts(long noteId, String title, String content, SQLiteDatabase db) {
+        db.delete(TABLE_NOTES_FTS, "docid = ?", new String[]{String.valueOf(noteId)});
+        ContentValues values = new ContentValues();
+        values.put("docid", noteId);
+        values.put(KEY_TITLE, title);
+        values.put(KEY_CONTENT, content);
+        db.insert(TABLE_NOTES_FTS, null, values);
+    }
+
+
+    /**
+     * Keeps tags index aligned with hashtags found in note's title and content. Locked notes are indexed by title
+     * tags only to avoid exposing their content through tags.
+     */
+    private void updateNoteTags(long noteId, Note note, SQLiteDatabase db) {
+        db.delete(TABLE_NOTE_TAGS, KEY_NOTE_TAGS_NOTE_ID + " = ?", new String[]{String.valueOf(noteId)});
+        Note indexedNote = note;
+        if (isTrue(note.isLocked())) {
+            indexedNote = new Note();
+            indexedNote.setTitle(note.getTitle());
+            indexedNote.setContent("");
+        }
+        for (String tag : TagsHelper.retrieveTags(indexedNote).keySet()) {
+            ContentValues values = new ContentValues();
+            values.put(KEY_NOTE_TAGS_NOTE_ID, noteId);
+            values.put(KEY_NOTE_TAGS_TAG, tag);
+            db.insertWithOnConflict(TABLE_NOTE_TAGS, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        }
+    }
+
+
+    /**
+     * Fills tags index parsing all the notes, locked ones by their title only
+     */
+    private void rebuildTagsIndex(SQLiteDatabase db) {
+        Log.i(Constants.TAG, "Rebuilding tags index");
+        db.delete(TABLE_NOTE_TAGS, null, null);
+        Cursor cursor = null;
+        try {
+            // Locked notes content is not indexed so it's never decrypted
+            cursor = db.rawQuery("SELECT " + KEY_ID + "," + KEY_TITLE + "," + STORED_CONTENT + "," + KEY_LOCKED
+                    + " FROM " + TABLE_NOTES + NOTE_CONTENTS_JOIN
+                    + " WHERE " + STORED_CONTENT + " LIKE '%#%' OR " + KEY_TITLE + " LIKE '%#%'", null);
+            while (cursor.moveToNext()) {
+                Note note = new Note();
+                note.setTitle(cursor.getString(1));
+                note.setContent(cursor.getString(2));
+                note.setLocked("1".equals(cursor.getString(3)));
+                updateNoteTags(cursor.getLong(0), note, db);
+            }
+        } finally {
+            if (cursor != null)
+                cursor.close();
+        }
     }
 
 
@@ -276,7 +734,9 @@ public class DbHelper extends SQLiteOpenHelper {
      * Attachments update
      * */
     public Attachment updateAttachment(Attachment attachment) {
-        return updateAttachment(-1, attachment, getDatabase(true));
+        updateAttachment(-1, attachment, getDatabase(true));
+        notifyTablesChanged(TABLE_ATTACHMENTS);
+        return attachment;
     }
 
 
@@ -302,11 +762,7 @@ public class DbHelper extends SQLiteOpenHelper {
      * Getting single note
      */
     public Note getNote(long id) {
-
-        String whereCondition = " WHERE "
-                + KEY_ID + " = " + id;
-
-        List<Note> notes = getNotes(whereCondition, true);
+        List<Note> notes = getNotes(QueryBuilder.where(KEY_ID + " = ?", id), false);
         Note note;
         if (notes.size() > 0) {
             note = notes.get(0);
@@ -325,7 +781,7 @@ public class DbHelper extends SQLiteOpenHelper {
      * @return Notes list
      */
     public List<Note> getAllNotes(Boolean checkNavigation) {
-        String whereCondition = "";
+        QueryBuilder whereCondition = new QueryBuilder();
         if (checkNavigation) {
             int navigation = Navigation.getNavigation();
             switch (navigation) {
@@ -351,36 +807,181 @@ public class DbHelper extends SQLiteOpenHelper {
     }
 
 
+    /**
+     * Retrieves a page of notes of the current navigation (or of the page's category) using keyset pagination on
+     * the active sorting criteria: following pages are retrieved starting from the last note of the previous one
+     * instead of using offsets, so that each page costs the same.
+     *
+     * @param page Pagination state, moved after the last retrieved note
+     * @return Notes list
+     */
+    public List<Note> getNotesPage(NotesPage page) {
+        return getNotesPage(page, null);
+    }
+
+
+    public List<Note> getNotesPage(NotesPage page, CancellationSignal cancellationSignal) {
+        return getNotesPage(page, page.getSize(), cancellationSignal);
+    }
+
+
+    /**
+     * Retrieves all the notes following the ones already retrieved by the pagination, with the same condition and
+     * sorting, completing it. Used when the whole list is needed, like when all notes are selected.
+     *
+     * @param page Pagination state, completed after the call
+     * @return Notes list, empty if pagination was already completed
+     */
+    public List<Note> getNotesPageRemaining(NotesPage page, CancellationSignal cancellationSignal) {
+        if (page.isCompleted()) {
+            return new ArrayList<>();
+        }
+        // Negative limit means no limit for SQLite
+        List<Note> notes = getNotesPage(page, -1, cancellationSignal);
+        page.setCompleted(true);
+        return notes;
+    }
+
+
+    private List<Note> getNotesPage(NotesPage page, int limit, CancellationSignal cancellationSignal) {
+        QueryBuilder whereCondition = page.getCategoryId() != null
+                ? getCategoryCondition(page.getCategoryId())
+                : getNavigationCondition();
+        if (page.getSortColumn() == null) {
+            page.setSortColumn(getSortColumn());
+        }
+        String sortExpression = getSortExpression(page.getSortColumn());
+        boolean ascending = isSortAscending(page.getSortColumn());
+
+        if (!page.isFirst()) {
+            addKeysetCondition(whereCondition, sortExpression, ascending, page);
+        }
+        String query = getNotesQuery(", " + sortExpression, whereCondition.getWhereClause(),
+                getOrderClause(sortExpression, ascending) + " LIMIT ?", Projection.SUMMARY);
+        Object[] args = whereCondition.getArgs();
+        args = Arrays.copyOf(args, args.length + 1);
+        args[args.length - 1] = limit;
+        return queryNotes(query, args, Projection.SUMMARY, page, cancellationSignal);
+    }
+
+
+    private QueryBuilder getNavigationCondition() {
+        switch (Navigation.getNavigation()) {
+            case Navigation.NOTES:
+                return getActiveCondition();
+            case Navigation.ARCHIVE:
+                return getArchivedCondition();
+            case Navigation.REMINDERS:
+                return getRemindersCondition(prefs.getBoolean(Constants.PREF_FILTER_PAST_REMINDERS, false));
+            case Navigation.TRASH:
+                return getTrashedCondition();
+            case Navigation.UNCATEGORIZED:
+                return getUncategorizedCondition();
+            case Navigation.CATEGORY:
+                return getCategoryCondition(Navigation.getCategory());
+            default:
+                return new QueryBuilder();
+        }
+    }
+
+
+    /**
+     * Builds the condition to retrieve notes following the last one of the page. Notes with null sorting value come
+     * first with ascending order and last with descending one.
+     */
+    private void addKeysetCondition(QueryBuilder whereCondition, String sortExpression, boolean ascending,
+                                    NotesPage page) {
+        String comparison = ascending ? " > " : " < ";
+        String idCondition = KEY_ID + comparison + "?";
+        Object lastSortValue = page.getLastSortValue();
+        if (lastSortValue == null) {
+            whereCondition.and(ascending
+                    ? "(" + sortExpression + " IS NULL AND " + idCondition + ") OR " + sortExpression + " IS NOT NULL"
+                    : sortExpression + " IS NULL AND " + idCondition, page.getLastId());
+            return;
+        }
+        String sortCollated = sortExpression + " COLLATE NOCASE";
+        whereCondition.and(sortCollated + comparison + "?"
+                        + " OR (" + sortCollated + " = ? AND " + idCondition + ")"
+                        + (ascending ? "" : " OR " + sortExpression + " IS NULL"),
+                lastSortValue, lastSortValue, page.getLastId());
+    }
+
+
     public List<Note> getNotesActive() {
-        String whereCondition = " WHERE " + KEY_ARCHIVED + " IS NOT 1 AND " + KEY_TRASHED + " IS NOT 1 ";
-        return getNotes(whereCondition, true);
+        return getNotes(getActiveCondition(), true);
+    }
+
+
+    QueryBuilder getActiveCondition() {
+        return QueryBuilder.where(KEY_ARCHIVED + " = 0 AND " + KEY_TRASHED + " = 0");
     }
 
 
     public List<Note> getNotesArchived() {
-        String whereCondition = " WHERE " + KEY_ARCHIVED + " = 1 AND " + KEY_TRASHED + " IS NOT 1 ";
-        return getNotes(whereCondition, true);
+        return getNotes(getArchivedCondition(), true);
+    }
+
+
+    QueryBuilder getArchivedCondition() {
+        return QueryBuilder.where(KEY_ARCHIVED + " = 1 AND " + KEY_TRASHED + " = 0");
     }
 
 
     public List<Note> getNotesTrashed() {
-        String whereCondition = " WHERE " + KEY_TRASHED + " = 1 ";
-        return getNotes(whereCondition, true);
+        return getNotes(getTrashedCondition(), true);
+    }
+
+
+    /**
+     * Retrieves summaries of locked notes in trash, whose deletion requires password
+     */
+    public List<Note> getNotesTrashedLocked() {
+        return getNoteSummaries(getTrashedCondition().and(KEY_LOCKED + " = 1"), false);
+    }
+
+
+    QueryBuilder getTrashedCondition() {
+        return QueryBuilder.where(KEY_TRASHED + " = 1");
     }
 
 
     public List<Note> getNotesUncategorized() {
-        String whereCondition = " WHERE "
-                + "(" + KEY_CATEGORY_ID + " IS NULL OR " + KEY_CATEGORY_ID + " == 0) "
-                + "AND " + KEY_TRASHED + " IS NOT 1";
-        return getNotes(whereCondition, true);
+        return getNotes(getUncategorizedCondition(), true);
+    }
+
+
+    QueryBuilder getUncategorizedCondition() {
+        return QueryBuilder.where(KEY_CATEGORY_ID + " IS NULL OR " + KEY_CATEGORY_ID + " == 0")
+                .and(KEY_TRASHED + " = 0");
+    }
+
+
+    /**
+     * Getting all notes without retrieving their attachments, to be used when only notes fields are needed
+     */
+    public List<Note> getAllNotesWithoutAttachments() {
+        return getNotes("", false, null, false);
+    }
+
+
+    /**
+     * Retrieves whole notes by increasing id starting after the passed one, so that all of them can be walked
+     * through keeping in memory a batch at a time
+     *
+     * @param lastId Id of the last note of the previous batch
+     * @param count  Maximum number of notes to retrieve
+     */
+    public List<Note> getNotesAfter(long lastId, int count) {
+        QueryBuilder whereCondition = QueryBuilder.where(KEY_ID + " > ?", lastId);
+        String query = getNotesQuery("", whereCondition.getWhereClause(), " ORDER BY " + KEY_ID + " LIMIT " + count,
+                Projection.FULL);
+        return queryNotes(query, whereCondition.getArgs(), Projection.FULL, null, null);
     }
 
 
     public List<Note> getNotesWithLocation() {
-        String whereCondition = " WHERE " + KEY_LONGITUDE + " IS NOT NULL "
-                + "AND " + KEY_LONGITUDE + " != 0 ";
-        return getNotes(whereCondition, true);
+        return getNotes(QueryBuilder.where(KEY_LONGITUDE + " IS NOT NULL AND " + KEY_LONGITUDE + " != 0"), true);
     }
 
 
@@ -388,33 +989,196 @@ public class DbHelper extends SQLiteOpenHelper {
      * Common method for notes retrieval. It accepts a query to perform and returns matching records.
      */
     public List<Note> getNotes(String whereCondition, boolean order) {
-        List<Note> noteList = new ArrayList<>();
+        return getNotes(whereCondition, order, null);
+    }
 
-        String sort_column, sort_order = "";
 
-        // Getting sorting criteria from preferences. Reminder screen forces sorting.
-        if (Navigation.checkNavigation(Navigation.REMINDERS)) {
-            sort_column = KEY_REMINDER;
+    /**
+     * Common method for notes retrieval with bound arguments for eventual '?' placeholders of the condition.
+     */
+    public List<Note> getNotes(String whereCondition, boolean order, String[] selectionArgs) {
+        return getNotes(whereCondition, order, selectionArgs, true);
+    }
+
+
+    /**
+     * Common method for notes retrieval eventually skipping attachments. When requested attachments of all the
+     * notes are retrieved by batches instead of once per note.
+     */
+    public List<Note> getNotes(String whereCondition, boolean order, String[] selectionArgs, boolean
+            withAttachments) {
+        return getNotes(whereCondition, order, selectionArgs, withAttachments ? Projection.FULL : Projection
+                .WITHOUT_ATTACHMENTS, null);
+    }
+
+
+    /**
+     * Common method for notes retrieval with a condition whose values are bound to placeholders
+     */
+    public List<Note> getNotes(QueryBuilder whereCondition, boolean order) {
+        return getNotes(whereCondition, order, true);
+    }
+
+
+    public List<Note> getNotes(QueryBuilder whereCondition, boolean order, boolean withAttachments) {
+        return getNotes(whereCondition.getWhereClause(), order, whereCondition.getArgs(), withAttachments
+                ? Projection.FULL : Projection.WITHOUT_ATTACHMENTS, null);
+    }
+
+
+    /**
+     * Retrieves notes summaries to be shown in lists: content is retrieved partially (and not decrypted) and only
+     * the first attachment of each note. Whole notes are loaded on demand by {@link NoteSummary}.
+     */
+    public List<Note> getNoteSummaries(String whereCondition, boolean order) {
+        return getNotes(whereCondition, order, null, Projection.SUMMARY, null);
+    }
+
+
+    public List<Note> getNoteSummaries(QueryBuilder whereCondition, boolean order) {
+        return getNoteSummaries(whereCondition, order, null);
+    }
+
+
+    public List<Note> getNoteSummaries(QueryBuilder whereCondition, boolean order,
+                                       CancellationSignal cancellationSignal) {
+        return getNotes(whereCondition.getWhereClause(), order, whereCondition.getArgs(), Projection.SUMMARY,
+                cancellationSignal);
+    }
+
+
+    private List<Note> getNotes(String whereCondition, boolean order, Object[] args, Projection projection,
+                                CancellationSignal cancellationSignal) {
+        String sortColumn = getSortColumn();
+        String sortExpression = getSortExpression(sortColumn);
+        String query = getNotesQuery("", whereCondition, order ? getOrderClause(sortExpression, isSortAscending
+                (sortColumn)) : "", projection);
+        // Query text already includes sorting
+        String cacheKey = projection + "|" + query + "|" + Arrays.deepToString(args);
+        long generation = queryCache.getGeneration();
+        List<Note> notes = queryCache.get(cacheKey);
+        if (notes == null) {
+            notes = queryNotes(query, args, projection, null, cancellationSignal);
+            queryCache.put(cacheKey, generation, notes);
+        }
+        // Cached notes are never handed out, callers are free to modify both the list and its notes
+        return copyNotes(notes);
+    }
+
+
+    private List<Note> copyNotes(List<Note> notes) {
+        List<Note> copies = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            copies.add(copyNote(note));
+        }
+        return copies;
+    }
+
+
+    /**
+     * Copies only what {@link #queryNotes} fills: summaries are copied without touching their content or
+     * attachments list, which would load the whole note
+     */
+    private Note copyNote(Note note) {
+        Note copy;
+        if (note instanceof NoteSummary) {
+            NoteSummary summary = (NoteSummary) note;
+            copy = new NoteSummary();
+            ((NoteSummary) copy).setContentPreview(summary.getContentPreview());
+            Attachment firstAttachment = summary.getFirstAttachment();
+            ((NoteSummary) copy).setFirstAttachment(firstAttachment != null ? new Attachment(firstAttachment) : null);
         } else {
-            sort_column = prefs.getString(Constants.PREF_SORTING_COLUMN, KEY_TITLE);
+            copy = new Note();
+            copy.setContent(note.getContent());
+            ArrayList<Attachment> attachments = new ArrayList<>();
+            for (Attachment attachment : note.getAttachmentsList()) {
+                attachments.add(new Attachment(attachment));
+            }
+            copy.setAttachmentsList(attachments);
+        }
+        copy.setCreation(note.getCreation());
+        copy.setLastModification(note.getLastModification());
+        copy.setTitle(note.getTitle());
+        copy.setArchived(note.isArchived());
+        copy.setTrashed(note.isTrashed());
+        copy.setAlarm(note.getAlarm());
+        copy.setReminderFired(note.isReminderFired() ? 1 : 0);
+        copy.setRecurrenceRule(note.getRecurrenceRule());
+        copy.setLatitude(note.getLatitude());
+        copy.setLongitude(note.getLongitude());
+        copy.setAddress(note.getAddress());
+        copy.setLocked(note.isLocked());
+        copy.setChecklist(note.isChecklist());
+        Category category = note.getCategory();
+        if (category != null) {
+            copy.setCategory(new Category(category.getId(), category.getName(), category.getDescription(),
+                    category.getColor()));
         }
-        if (order) {
-            sort_order = KEY_TITLE.equals(sort_column) || KEY_REMINDER.equals(sort_column) ? " ASC " : " DESC ";
+        return copy;
+    }
+
+
+    /**
+     * Getting sorting criteria from preferences. Reminder screen forces sorting.
+     */
+    private String getSortColumn() {
+        if (Navigation.checkNavigation(Navigation.REMINDERS)) {
+            return KEY_REMINDER;
+        } else {
+            return prefs.getString(Constants.PREF_SORTING_COLUMN, KEY_TITLE);
         }
+    }
 
-        // In case of title sorting criteria it must be handled empty title by concatenating content
-        sort_column = KEY_TITLE.equals(sort_column) ? KEY_TITLE + "||" + KEY_CONTENT : sort_column;
 
+    private boolean isSortAscending(String sortColumn) {
+        return KEY_TITLE.equals(sortColumn) || KEY_REMINDER.equals(sortColumn);
+    }
+
+
+    private String getSortExpression(String sortColumn) {
+        // In case of title sorting criteria it must be handled empty title by the key concatenating content
+        if (KEY_TITLE.equals(sortColumn)) {
+            return KEY_TITLE_SORT;
+        }
         // In case of reminder sorting criteria the empty reminder notes must be moved on bottom of results
-        sort_column = KEY_REMINDER.equals(sort_column) ? "IFNULL(" + KEY_REMINDER + ", " +
-                "" + Constants.TIMESTAMP_UNIX_EPOCH + ")" : sort_column;
+        if (KEY_REMINDER.equals(sortColumn)) {
+            return "IFNULL(" + KEY_REMINDER + ", " + Constants.TIMESTAMP_UNIX_EPOCH + ")";
+        }
+        return sortColumn;
+    }
+
+
+    /**
+     * Sorting is completed by note's id to have a stable order also for notes with the same sorting value
+     */
+    private String getOrderClause(String sortExpression, boolean ascending) {
+        String sortOrder = ascending ? " ASC" : " DESC";
+        return " ORDER BY " + sortExpression + " COLLATE NOCASE" + sortOrder + ", " + KEY_ID + sortOrder;
+    }
 
-        // Generic query to be specialized with conditions passed as parameter
-        String query = "SELECT "
+
+    /**
+     * Generic query to be specialized with conditions passed as parameter. Summaries retrieve the content preview
+     * instead of the whole content, which is joined only for other projections, and the first attachment as last
+     * columns.
+     */
+    private String getNotesQuery(String additionalColumns, String whereCondition, String orderClause, Projection
+            projection) {
+        return getNotesQuery(additionalColumns, "", whereCondition, orderClause, projection);
+    }
+
+
+    /**
+     * @param additionalJoins Joins added to notes and categories ones, before the eventual first attachment one
+     */
+    private String getNotesQuery(String additionalColumns, String additionalJoins, String whereCondition, String
+            orderClause, Projection projection) {
+        boolean summary = projection == Projection.SUMMARY;
+        return "SELECT "
                 + KEY_CREATION + ","
                 + KEY_LAST_MODIFICATION + ","
                 + KEY_TITLE + ","
-                + KEY_CONTENT + ","
+                + (summary ? KEY_PREVIEW : STORED_CONTENT) + ","
                 + KEY_ARCHIVED + ","
                 + KEY_TRASHED + ","
                 + KEY_REMINDER + ","
@@ -426,29 +1190,99 @@ public class DbHelper extends SQLiteOpenHelper {
                 + KEY_LOCKED + ","
                 + KEY_CHECKLIST + ","
                 + KEY_CATEGORY + ","
-                + KEY_CATEGORY_NAME + ","
+                + TABLE_CATEGORY + "." + KEY_CATEGORY_NAME + ","
                 + KEY_CATEGORY_DESCRIPTION + ","
                 + KEY_CATEGORY_COLOR
+                + additionalColumns
+                + (summary
+                ? ", first_attachment." + KEY_ATTACHMENT_ID
+                + ", first_attachment." + KEY_ATTACHMENT_URI
+                + ", first_attachment." + KEY_ATTACHMENT_NAME
+                + ", first_attachment." + KEY_ATTACHMENT_SIZE
+                + ", first_attachment." + KEY_ATTACHMENT_LENGTH
+                + ", first_attachment." + KEY_ATTACHMENT_MIME_TYPE
+                : "")
                 + " FROM " + TABLE_NOTES
                 + " LEFT JOIN " + TABLE_CATEGORY + " USING( " + KEY_CATEGORY + ") "
+                + additionalJoins
+                + (summary ? "" : NOTE_CONTENTS_JOIN)
+                + (summary
+                ? " LEFT JOIN " + TABLE_ATTACHMENTS + " first_attachment ON first_attachment." + KEY_ATTACHMENT_ID
+                + " = (SELECT MIN(" + KEY_ATTACHMENT_ID + ") FROM " + TABLE_ATTACHMENTS
+                + " WHERE " + KEY_ATTACHMENT_NOTE_ID + " = " + TABLE_NOTES + "." + KEY_ID + ") "
+                : "")
                 + whereCondition
-                + (order ? " ORDER BY " + sort_column + " COLLATE NOCASE " + sort_order : "");
+                + orderClause;
+    }
+
+
+    /**
+     * Plans of notes queries with passed condition for each projection, used to check that they're served by indexes
+     */
+    List<String> getNotesQueryPlan(QueryBuilder whereCondition) {
+        String sortColumn = getSortColumn();
+        String orderClause = getOrderClause(getSortExpression(sortColumn), isSortAscending(sortColumn));
+        List<String> plan = new ArrayList<>();
+        for (Projection projection : Projection.values()) {
+            plan.addAll(getQueryPlan(getNotesQuery("", whereCondition.getWhereClause(), orderClause, projection),
+                    whereCondition.getArgs()));
+        }
+        return plan;
+    }
+
+
+    /**
+     * Returns the details of the steps SQLite plans to execute the query
+     */
+    List<String> getQueryPlan(String query, Object[] args) {
+        List<String> plan = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = rawQuery("EXPLAIN QUERY PLAN " + query, args);
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detailIndex));
+            }
+        } finally {
+            if (cursor != null)
+                cursor.close();
+        }
+        return plan;
+    }
+
+
+    private List<Note> queryNotes(String query, Object[] args, Projection projection, NotesPage page,
+                                  CancellationSignal cancellationSignal) {
+        return queryNotes(query, args, projection, page, null, cancellationSignal);
+    }
+
+
+    /**
+     * Performs notes query. If a page is passed its state is moved after the last retrieved note, whose sorting
+     * value is expected as the first additional column of the query.
+     *
+     * @param ranks If passed it's filled with full-text relevance of each note, whose match info is expected as the
+     *              first additional column of the query
+     */
+    private List<Note> queryNotes(String query, Object[] args, Projection projection, NotesPage page,
+                                  Map<Long, Double> ranks, CancellationSignal cancellationSignal) {
+        List<Note> noteList = new ArrayList<>();
 
         Log.v(Constants.TAG, "Query: " + query);
 
         Cursor cursor = null;
         try {
-            cursor = getDatabase().rawQuery(query, null);
+            cursor = rawQuery(query, args, cancellationSignal);
 
             // Looping through all rows and adding to list
             if (cursor.moveToFirst()) {
                 do {
                     int i = 0;
-                    Note note = new Note();
+                    Note note = projection == Projection.SUMMARY ? new NoteSummary() : new Note();
                     note.setCreation(cursor.getLong(i++));
                     note.setLastModification(cursor.getLong(i++));
                     note.setTitle(cursor.getString(i++));
-                    note.setContent(cursor.getString(i++));
+                    String content = cursor.getString(i++);
                     note.setArchived("1".equals(cursor.getString(i++)));
                     note.setTrashed("1".equals(cursor.getString(i++)));
                     note.setAlarm(cursor.getString(i++));
@@ -460,10 +1294,15 @@ public class DbHelper extends SQLiteOpenHelper {
                     note.setLocked("1".equals(cursor.getString(i++)));
                     note.setChecklist("1".equals(cursor.getString(i++)));
 
-                    // Eventual decryption of content
-                    if (note.isLocked()) {
-                        note.setContent(Security.decrypt(note.getContent(), prefs.getString(Constants.PREF_PASSWORD,
-                                "")));
+                    if (projection == Projection.SUMMARY) {
+                        // Locked notes have an empty preview, their content is never decrypted to be listed
+                        ((NoteSummary) note).setContentPreview(content);
+                        ((NoteSummary) note).setFirstAttachment(getFirstAttachment(cursor));
+                    } else if (note.isLocked()) {
+                        // Eventual decryption of content
+                        note.setContent(Security.decrypt(content, prefs.getString(Constants.PREF_PASSWORD, "")));
+                    } else {
+                        note.setContent(content);
                     }
 
                     // Set category
@@ -474,108 +1313,532 @@ public class DbHelper extends SQLiteOpenHelper {
 						note.setCategory(category);
 					}
 
-                    // Add eventual attachments uri
-                    note.setAttachmentsList(getNoteAttachments(note));
+                    if (ranks != null) {
+                        ranks.put(note.get_id(), computeFtsRank(cursor.getBlob(ADDITIONAL_COLUMN_INDEX)));
+                    }
+
+                    // Adding note to list
+                    noteList.add(note);
+
+                } while (cursor.moveToNext());
+            }
+
+            if (page != null) {
+                boolean completed = noteList.size() < page.getSize();
+                if (noteList.size() > 0) {
+                    page.moveTo(getLastSortValue(cursor), noteList.get(noteList.size() - 1).get_id());
+                }
+                page.setCompleted(completed);
+            }
+
+        } finally {
+            if (cursor != null)
+                cursor.close();
+        }
+
+        if (projection == Projection.FULL) {
+            fillAttachments(noteList);
+        }
+
+        Log.v(Constants.TAG, "Query: Retrieval finished!");
+        return noteList;
+    }
+
+
+    private Attachment getFirstAttachment(Cursor cursor) {
+        int i = cursor.getColumnCount() - FIRST_ATTACHMENT_COLUMNS;
+        if (cursor.isNull(i)) {
+            return null;
+        }
+        return new Attachment(cursor.getLong(i), Uri.parse(cursor.getString(i + 1)), cursor.getString(i + 2),
+                cursor.getInt(i + 3), (long) cursor.getInt(i + 4), cursor.getString(i + 5));
+    }
+
+
+    private Object getLastSortValue(Cursor cursor) {
+        if (!cursor.moveToLast()) {
+            return null;
+        }
+        switch (cursor.getType(ADDITIONAL_COLUMN_INDEX)) {
+            case Cursor.FIELD_TYPE_NULL:
+                return null;
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(ADDITIONAL_COLUMN_INDEX);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(ADDITIONAL_COLUMN_INDEX);
+            default:
+                return cursor.getString(ADDITIONAL_COLUMN_INDEX);
+        }
+    }
+
+
+    /**
+     * Sets attachments to all the notes retrieving them with a query each {@link #IDS_CHUNK_SIZE}
+     * notes and grouping results by note
+     */
+    private void fillAttachments(List<Note> notes) {
+        Map<Long, ArrayList<Attachment>> attachmentsMap = new HashMap<>();
+        for (int start = 0; start < notes.size(); start += IDS_CHUNK_SIZE) {
+            List<Note> chunk = notes.subList(start, Math.min(start + IDS_CHUNK_SIZE, notes.size()));
+            Object[] noteIds = getIds(chunk);
+            String placeholders = getPlaceholders(chunk.size());
+            String sql = "SELECT "
+                    + KEY_ATTACHMENT_ID + ","
+                    + KEY_ATTACHMENT_URI + ","
+                    + KEY_ATTACHMENT_NAME + ","
+                    + KEY_ATTACHMENT_SIZE + ","
+                    + KEY_ATTACHMENT_LENGTH + ","
+                    + KEY_ATTACHMENT_MIME_TYPE + ","
+                    + KEY_ATTACHMENT_NOTE_ID
+                    + " FROM " + TABLE_ATTACHMENTS
+                    + " WHERE " + KEY_ATTACHMENT_NOTE_ID + " IN (" + placeholders + ")"
+                    + " ORDER BY " + KEY_ATTACHMENT_ID;
+
+            Cursor cursor = null;
+            try {
+                cursor = rawQuery(sql, noteIds);
+                while (cursor.moveToNext()) {
+                    ArrayList<Attachment> noteAttachments = attachmentsMap.get(cursor.getLong(6));
+                    if (noteAttachments == null) {
+                        noteAttachments = new ArrayList<>();
+                        attachmentsMap.put(cursor.getLong(6), noteAttachments);
+                    }
+                    noteAttachments.add(new Attachment(cursor.getLong(0), Uri.parse(cursor.getString(1)),
+                            cursor.getString(2), cursor.getInt(3), (long) cursor.getInt(4), cursor.getString(5)));
+                }
+            } finally {
+                if (cursor != null)
+                    cursor.close();
+            }
+        }
+
+        for (Note note : notes) {
+            ArrayList<Attachment> noteAttachments = attachmentsMap.get(note.get_id());
+            note.setAttachmentsList(noteAttachments != null ? noteAttachments : new ArrayList<>());
+        }
+    }
+
+
+    /**
+     * Archives/restore single note
+     */
+    public void archiveNote(Note note, boolean archive) {
+        note.setArchived(archive);
+        updateNote(note, false);
+    }
+
+
+    /**
+     * Trashes/restore single note
+     */
+    public void trashNote(Note note, boolean trash) {
+        note.setTrashed(trash);
+        updateNote(note, false);
+    }
+
+
+    /**
+     * Deleting single note
+     */
+    public boolean deleteNote(Note note) {
+        return deleteNote(note, false);
+    }
+
+
+	/**
+	 * Deleting single note, eventually keeping attachments
+	 */
+	public boolean deleteNote(Note note, boolean keepAttachments) {
+		return deleteNote(note.get_id(), keepAttachments);
+	}
+
+
+	/**
+	 * Deleting single note by its id
+	 */
+	public boolean deleteNote(long noteId, boolean keepAttachments) {
+		SQLiteDatabase db = getDatabase(true);
+		db.delete(TABLE_NOTES, KEY_ID + " = ?", new String[]{String.valueOf(noteId)});
+		db.delete(TABLE_NOTE_CONTENTS, KEY_NOTE_CONTENTS_NOTE_ID + " = ?", new String[]{String.valueOf(noteId)});
+		db.delete(TABLE_NOTES_FTS, "docid = ?", new String[]{String.valueOf(noteId)});
+		db.delete(TABLE_NOTE_TAGS, KEY_NOTE_TAGS_NOTE_ID + " = ?", new String[]{String.valueOf(noteId)});
+		if (!keepAttachments) {
+			db.delete(TABLE_ATTACHMENTS, KEY_ATTACHMENT_NOTE_ID + " = ?", new String[]{String.valueOf(noteId)});
+		}
+		notifyTablesChanged(TABLE_NOTES, TABLE_ATTACHMENTS, TABLE_NOTE_TAGS);
+		return true;
+	}
+
+
+    /**
+     * Archives/restore many notes
+     */
+    public void archiveNotes(List<Note> notes, boolean archive, CancellationSignal cancellationSignal,
+                             OnNotesProcessedListener listener) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_ARCHIVED, archive);
+        updateNotes(notes, values, cancellationSignal, listener);
+    }
+
+
+    /**
+     * Trashes/restore many notes
+     */
+    public void trashNotes(List<Note> notes, boolean trash, CancellationSignal cancellationSignal,
+                           OnNotesProcessedListener listener) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_TRASHED, trash);
+        updateNotes(notes, values, cancellationSignal, listener);
+    }
+
 
-                    // Adding note to list
-                    noteList.add(note);
+    /**
+     * Sets (or removes if null) category of many notes
+     */
+    public void categorizeNotes(List<Note> notes, Category category, CancellationSignal cancellationSignal,
+                                OnNotesProcessedListener listener) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_CATEGORY, category != null ? category.getId() : null);
+        updateNotes(notes, values, cancellationSignal, listener);
+    }
 
-                } while (cursor.moveToNext());
-            }
 
+    /**
+     * Brings back to active notes the ones whose reminder has just been fired, eventually marking it as fired, and
+     * moves recurring ones to their next occurrence. Everything happens in a single transaction.
+     *
+     * @param nextReminders Next occurrence of recurring notes by their id, these are left pending
+     */
+    public void updateFiredReminders(List<Note> notes, boolean markFired, Map<Long, Long> nextReminders) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_ARCHIVED, false);
+        if (markFired) {
+            values.put(KEY_REMINDER_FIRED, true);
+        }
+        SQLiteDatabase db = getDatabase(true);
+        db.beginTransactionNonExclusive();
+        try {
+            updateNotes(notes, values, null, null);
+            SQLiteStatement statement = getStatement("UPDATE " + TABLE_NOTES + " SET " + KEY_REMINDER + " = ?, "
+                    + KEY_REMINDER_FIRED + " = 0 WHERE " + KEY_ID + " = ?");
+            synchronized (statement) {
+                for (Map.Entry<Long, Long> nextReminder : nextReminders.entrySet()) {
+                    statement.bindLong(1, nextReminder.getValue());
+                    statement.bindLong(2, nextReminder.getKey());
+                    statement.executeUpdateDelete();
+                }
+            }
+            db.setTransactionSuccessful();
         } finally {
-            if (cursor != null)
-                cursor.close();
+            db.endTransaction();
         }
+        notifyTablesChanged(TABLE_NOTES);
+    }
 
-        Log.v(Constants.TAG, "Query: Retrieval finished!");
-        return noteList;
+
+    /**
+     * Applies the same values to many notes with an UPDATE each {@link #IDS_CHUNK_SIZE} notes. Everything happens
+     * in a single transaction, so when canceled no note is modified.
+     *
+     * @throws android.os.OperationCanceledException if canceled
+     */
+    private void updateNotes(List<Note> notes, ContentValues values, CancellationSignal cancellationSignal,
+                             OnNotesProcessedListener listener) {
+        SQLiteDatabase db = getDatabase(true);
+        db.beginTransactionNonExclusive();
+        try {
+            for (int start = 0; start < notes.size(); start += IDS_CHUNK_SIZE) {
+                if (cancellationSignal != null) {
+                    cancellationSignal.throwIfCanceled();
+                }
+                List<Note> chunk = notes.subList(start, Math.min(start + IDS_CHUNK_SIZE, notes.size()));
+                db.update(TABLE_NOTES, values, KEY_ID + " IN (" + getPlaceholders(chunk.size()) + ")",
+                        getIdsAsStrings(chunk));
+                if (listener != null) {
+                    listener.onNotesProcessed(start + chunk.size(), notes.size());
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifyTablesChanged(TABLE_NOTES);
     }
 
 
     /**
-     * Archives/restore single note
+     * Deletes many notes with a statement for each table each {@link #IDS_CHUNK_SIZE} notes, all in a single
+     * transaction.
+     *
+     * @return Attachments that were associated to deleted notes, to let their files be removed
+     * @throws android.os.OperationCanceledException if canceled
      */
-    public void archiveNote(Note note, boolean archive) {
-        note.setArchived(archive);
-        updateNote(note, false);
+    public List<Attachment> deleteNotes(List<Note> notes, boolean keepAttachments,
+                                        CancellationSignal cancellationSignal, OnNotesProcessedListener listener) {
+        List<Attachment> deletedAttachments = new ArrayList<>();
+        SQLiteDatabase db = getDatabase(true);
+        db.beginTransactionNonExclusive();
+        try {
+            for (int start = 0; start < notes.size(); start += IDS_CHUNK_SIZE) {
+                if (cancellationSignal != null) {
+                    cancellationSignal.throwIfCanceled();
+                }
+                List<Note> chunk = notes.subList(start, Math.min(start + IDS_CHUNK_SIZE, notes.size()));
+                String placeholders = getPlaceholders(chunk.size());
+                String[] ids = getIdsAsStrings(chunk);
+                db.delete(TABLE_NOTES, KEY_ID + " IN (" + placeholders + ")", ids);
+                db.delete(TABLE_NOTE_CONTENTS, KEY_NOTE_CONTENTS_NOTE_ID + " IN (" + placeholders + ")", ids);
+                db.delete(TABLE_NOTES_FTS, "docid IN (" + placeholders + ")", ids);
+                db.delete(TABLE_NOTE_TAGS, KEY_NOTE_TAGS_NOTE_ID + " IN (" + placeholders + ")", ids);
+                if (!keepAttachments) {
+                    String attachmentsCondition = " WHERE " + KEY_ATTACHMENT_NOTE_ID + " IN (" + placeholders + ")";
+                    deletedAttachments.addAll(getAttachments(attachmentsCondition, getIds(chunk)));
+                    db.delete(TABLE_ATTACHMENTS, KEY_ATTACHMENT_NOTE_ID + " IN (" + placeholders + ")", ids);
+                }
+                if (listener != null) {
+                    listener.onNotesProcessed(start + chunk.size(), notes.size());
+                }
+            }
+            deletedAttachments = getUnusedFilesAttachments(deletedAttachments);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifyTablesChanged(TABLE_NOTES, TABLE_ATTACHMENTS, TABLE_NOTE_TAGS);
+        return deletedAttachments;
     }
 
 
     /**
-     * Trashes/restore single note
+     * Filters deleted attachments keeping one for each file not used anymore by other attachments
      */
-    public void trashNote(Note note, boolean trash) {
-        note.setTrashed(trash);
-        updateNote(note, false);
+    private List<Attachment> getUnusedFilesAttachments(List<Attachment> deletedAttachments) {
+        List<Attachment> unusedFilesAttachments = new ArrayList<>();
+        Set<Uri> checkedUris = new HashSet<>();
+        for (Attachment attachment : deletedAttachments) {
+            if (checkedUris.add(attachment.getUri())
+                    && !isAttachmentFileUsed(attachment.getUri(), Collections.<Attachment>emptyList())) {
+                unusedFilesAttachments.add(attachment);
+            }
+        }
+        return unusedFilesAttachments;
     }
 
 
     /**
-     * Deleting single note
+     * Checks if an attachment file is used by saved attachments, since attachments with identical content share
+     * the same file
+     *
+     * @param excludedAttachments Attachments not to be considered, like the ones being removed
      */
-    public boolean deleteNote(Note note) {
-        return deleteNote(note, false);
+    public boolean isAttachmentFileUsed(Uri uri, List<Attachment> excludedAttachments) {
+        QueryBuilder whereCondition = QueryBuilder.where(KEY_ATTACHMENT_URI + " = ?", uri.toString());
+        if (!excludedAttachments.isEmpty()) {
+            Object[] ids = new Object[excludedAttachments.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = excludedAttachments.get(i).getId();
+            }
+            whereCondition.and(KEY_ATTACHMENT_ID + " NOT IN (" + getPlaceholders(ids.length) + ")", ids);
+        }
+        Cursor cursor = null;
+        try {
+            cursor = rawQuery("SELECT 1 FROM " + TABLE_ATTACHMENTS + whereCondition.getWhereClause() + " LIMIT 1",
+                    whereCondition.getArgs());
+            return cursor.moveToFirst();
+        } finally {
+            if (cursor != null)
+                cursor.close();
+        }
     }
 
 
-	/**
-	 * Deleting single note, eventually keeping attachments
-	 */
-	public boolean deleteNote(Note note, boolean keepAttachments) {
-		return deleteNote(note.get_id(), keepAttachments);
-	}
+    private static Object[] getIds(List<Note> notes) {
+        Object[] ids = new Object[notes.size()];
+        for (int i = 0; i < notes.size(); i++) {
+            ids[i] = notes.get(i).get_id();
+        }
+        return ids;
+    }
 
 
-	/**
-	 * Deleting single note by its id
-	 */
-	public boolean deleteNote(long noteId, boolean keepAttachments) {
-		SQLiteDatabase db = getDatabase(true);
-		db.delete(TABLE_NOTES, KEY_ID + " = ?", new String[]{String.valueOf(noteId)});
-		if (!keepAttachments) {
-			db.delete(TABLE_ATTACHMENTS, KEY_ATTACHMENT_NOTE_ID + " = ?", new String[]{String.valueOf(noteId)});
-		}
-		return true;
-	}
+    private static String[] getIdsAsStrings(List<Note> notes) {
+        String[] ids = new String[notes.size()];
+        for (int i = 0; i < notes.size(); i++) {
+            ids[i] = String.valueOf(notes.get(i).get_id());
+        }
+        return ids;
+    }
+
+
+    private static String getPlaceholders(int count) {
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            placeholders.append(i == 0 ? "?" : ",?");
+        }
+        return placeholders.toString();
+    }
 
 
     /**
-     * Empties trash deleting all trashed notes
+     * Empties trash deleting all trashed notes with statements conditioned on trashed state, so that notes are
+     * never loaded
+     *
+     * @return Attachments of deleted notes whose files are not used anymore
+     * @throws android.os.OperationCanceledException if canceled before deleting notes
      */
-    public void emptyTrash() {
-        for (Note note : getNotesTrashed()) {
-            deleteNote(note);
+    public List<Attachment> emptyTrash(CancellationSignal cancellationSignal) {
+        String trashedIds = "SELECT " + KEY_ID + " FROM " + TABLE_NOTES + " WHERE " + KEY_TRASHED + " = 1";
+        List<Attachment> deletedAttachments;
+        SQLiteDatabase db = getDatabase(true);
+        db.beginTransactionNonExclusive();
+        try {
+            deletedAttachments = getAttachments(" WHERE " + KEY_ATTACHMENT_NOTE_ID + " IN (" + trashedIds + ")",
+                    new Object[0]);
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            db.delete(TABLE_ATTACHMENTS, KEY_ATTACHMENT_NOTE_ID + " IN (" + trashedIds + ")", null);
+            db.delete(TABLE_NOTE_CONTENTS, KEY_NOTE_CONTENTS_NOTE_ID + " IN (" + trashedIds + ")", null);
+            db.delete(TABLE_NOTES_FTS, "docid IN (" + trashedIds + ")", null);
+            db.delete(TABLE_NOTE_TAGS, KEY_NOTE_TAGS_NOTE_ID + " IN (" + trashedIds + ")", null);
+            db.delete(TABLE_NOTES, KEY_TRASHED + " = 1", null);
+            deletedAttachments = getUnusedFilesAttachments(deletedAttachments);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
+        notifyTablesChanged(TABLE_NOTES, TABLE_ATTACHMENTS, TABLE_NOTE_TAGS);
+        return deletedAttachments;
     }
 
 
     /**
-     * Gets notes matching pattern with title or content text
+     * Gets notes matching pattern with title or content text.
+     * Full-text index is used and results are ranked by relevance, falling back to a plain scan when pattern
+     * has no indexable words (ex. only punctuation). Indexed words are matched by prefix, so a pattern found only
+     * in the middle of a word doesn't match.
      *
      * @param pattern String to match with
      * @return Notes list
      */
     public List<Note> getNotesByPattern(String pattern) {
-    	String escapedPattern = escapeSql(pattern);
+        return getNotesByPattern(pattern, null);
+    }
+
+
+    public List<Note> getNotesByPattern(String pattern, CancellationSignal cancellationSignal) {
+        String ftsQuery = buildFtsQuery(pattern);
+        if (ftsQuery == null) {
+            return getNotesByPatternScan(pattern, cancellationSignal);
+        }
+        // Matching notes come with their full-text match info, so that ranking needs no further index pass
+        String ftsJoin = " JOIN (SELECT docid AS fts_docid, matchinfo(" + TABLE_NOTES_FTS + ", 'pcx') AS"
+                + " fts_matchinfo FROM " + TABLE_NOTES_FTS + " WHERE " + TABLE_NOTES_FTS + " MATCH ?) ON fts_docid = "
+                + TABLE_NOTES + "." + KEY_ID + " ";
+        QueryBuilder whereCondition = getPatternNavigationCondition();
+        String sortColumn = getSortColumn();
+        String query = getNotesQuery(", fts_matchinfo", ftsJoin, whereCondition.getWhereClause(),
+                getOrderClause(getSortExpression(sortColumn), isSortAscending(sortColumn)), Projection.SUMMARY);
+        Object[] whereArgs = whereCondition.getArgs();
+        Object[] args = new Object[whereArgs.length + 1];
+        args[0] = ftsQuery;
+        System.arraycopy(whereArgs, 0, args, 1, whereArgs.length);
+
+        final Map<Long, Double> ranks = new HashMap<>();
+        List<Note> notes = queryNotes(query, args, Projection.SUMMARY, null, ranks, cancellationSignal);
+        Collections.sort(notes, (note1, note2) -> Double.compare(getRank(ranks, note2), getRank(ranks, note1)));
+        return notes;
+    }
+
+
+    private List<Note> getNotesByPatternScan(String pattern, CancellationSignal cancellationSignal) {
+    	String likePattern = "%" + escapeLikePattern(pattern) + "%";
+        QueryBuilder whereCondition = getPatternNavigationCondition()
+                .and("( " + KEY_LOCKED + " IS NOT 1 AND (" + KEY_TITLE + " LIKE ? ESCAPE '\\' OR "
+                                + KEY_ID + " IN (SELECT " + KEY_NOTE_CONTENTS_NOTE_ID + " FROM " + TABLE_NOTE_CONTENTS
+                                + " WHERE " + KEY_CONTENT + " LIKE ? ESCAPE '\\')))"
+                                + " OR ( " + KEY_LOCKED + " = 1 AND " + KEY_TITLE + " LIKE ? ESCAPE '\\')",
+                        likePattern, likePattern, likePattern);
+        return getNoteSummaries(whereCondition, true, cancellationSignal);
+    }
+
+
+    private QueryBuilder getPatternNavigationCondition() {
         int navigation = Navigation.getNavigation();
-        String whereCondition = " WHERE "
-                + KEY_TRASHED + (navigation == Navigation.TRASH ? " IS 1" : " IS NOT 1")
-                + (navigation == Navigation.ARCHIVE ? " AND " + KEY_ARCHIVED + " IS 1" : "")
-                + (navigation == Navigation.CATEGORY ? " AND " + KEY_CATEGORY + " = " + Navigation.getCategory() : "")
-                + (navigation == Navigation.UNCATEGORIZED ? " AND (" + KEY_CATEGORY + " IS NULL OR " + KEY_CATEGORY_ID
-                + " == 0) " : "")
-                + (Navigation.checkNavigation(Navigation.REMINDERS) ? " AND " + KEY_REMINDER + " IS NOT NULL" : "")
-                + " AND ("
-                + " ( " + KEY_LOCKED + " IS NOT 1 AND (" + KEY_TITLE + " LIKE '%" + escapedPattern + "%' ESCAPE '\\' " + " OR " +
-                KEY_CONTENT + " LIKE '%" + escapedPattern + "%' ESCAPE '\\' ))"
-                + " OR ( " + KEY_LOCKED + " = 1 AND " + KEY_TITLE + " LIKE '%" + escapedPattern + "%' ESCAPE '\\' )"
-                + ")";
-        return getNotes(whereCondition, true);
+        QueryBuilder whereCondition = QueryBuilder.where(KEY_TRASHED + (navigation == Navigation.TRASH ? " = 1" :
+                " = 0"));
+        if (navigation == Navigation.ARCHIVE) {
+            whereCondition.and(KEY_ARCHIVED + " = 1");
+        }
+        if (navigation == Navigation.CATEGORY) {
+            whereCondition.and(KEY_CATEGORY + " = ?", Navigation.getCategory());
+        }
+        if (navigation == Navigation.UNCATEGORIZED) {
+            whereCondition.and(KEY_CATEGORY + " IS NULL OR " + KEY_CATEGORY_ID + " == 0");
+        }
+        if (Navigation.checkNavigation(Navigation.REMINDERS)) {
+            whereCondition.and(KEY_REMINDER + " IS NOT NULL");
+        }
+        return whereCondition;
+    }
+
+
+    /**
+     * Builds a prefix MATCH expression splitting the pattern in words the same way the default FTS tokenizer does
+     * (ASCII alphanumerics and any non-ASCII character). Only ASCII letters are lowercased, as the tokenizer folds
+     * no other case.
+     *
+     * @return Query or null if pattern contains no searchable words
+     */
+    static String buildFtsQuery(String pattern) {
+        StringBuilder query = new StringBuilder();
+        StringBuilder token = new StringBuilder();
+        String source = pattern == null ? "" : pattern + " ";
+        for (char c : source.toCharArray()) {
+            if (c >= 128) {
+                token.append(c);
+            } else if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                query.append(query.length() > 0 ? " " : "").append(token).append("*");
+                token.setLength(0);
+            }
+        }
+        return query.length() > 0 ? query.toString() : null;
+    }
+
+
+    static double computeFtsRank(byte[] matchInfo) {
+        ByteBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+        int phrases = buffer.getInt();
+        int columns = buffer.getInt();
+        double rank = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns; column++) {
+                int hitsThisRow = buffer.getInt();
+                int hitsAllRows = buffer.getInt();
+                buffer.getInt();
+                if (hitsThisRow > 0) {
+                    double weight = column < FTS_COLUMNS_WEIGHTS.length ? FTS_COLUMNS_WEIGHTS[column] : 1.0;
+                    rank += weight * hitsThisRow / hitsAllRows;
+                }
+            }
+        }
+        return rank;
+    }
+
+
+    private static double getRank(Map<Long, Double> ranks, Note note) {
+        Double rank = ranks.get(note.get_id());
+        return rank != null ? rank : 0;
     }
 
-    static String escapeSql(String pattern) {
-        return StringEscapeUtils.escapeSql(pattern).replace("%", "\\%").replace("_", "\\_");
+
+    /**
+     * Escapes LIKE wildcards (and backslash, used as ESCAPE character) of a value bound as pattern
+     */
+    static String escapeLikePattern(String pattern) {
+        return pattern.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
 
 
@@ -586,11 +1849,15 @@ public class DbHelper extends SQLiteOpenHelper {
      * @return Notes list
      */
     public List<Note> getNotesWithReminder(boolean filterPastReminders) {
-        String whereCondition = " WHERE " + KEY_REMINDER
-                + (filterPastReminders ? " >= " + Calendar.getInstance().getTimeInMillis() : " IS NOT NULL")
-                + " AND " + KEY_ARCHIVED + " IS NOT 1"
-                + " AND " + KEY_TRASHED + " IS NOT 1";
-        return getNotes(whereCondition, true);
+        return getNotes(getRemindersCondition(filterPastReminders), true);
+    }
+
+
+    QueryBuilder getRemindersCondition(boolean filterPastReminders) {
+        QueryBuilder whereCondition = filterPastReminders
+                ? QueryBuilder.where(KEY_REMINDER + " >= ?", Calendar.getInstance().getTimeInMillis())
+                : QueryBuilder.where(KEY_REMINDER + " IS NOT NULL");
+        return whereCondition.and(KEY_ARCHIVED + " = 0 AND " + KEY_TRASHED + " = 0");
     }
 
 
@@ -600,10 +1867,10 @@ public class DbHelper extends SQLiteOpenHelper {
      * @return Notes list
      */
     public List<Note> getNotesWithReminderNotFired () {
-        String whereCondition = " WHERE " + KEY_REMINDER + " IS NOT NULL"
-                                + " AND " + KEY_REMINDER_FIRED + " IS NOT 1"
-                                + " AND " + KEY_ARCHIVED + " IS NOT 1"
-                                + " AND " + KEY_TRASHED + " IS NOT 1";
+        QueryBuilder whereCondition = QueryBuilder.where(KEY_REMINDER + " IS NOT NULL"
+                                + " AND " + KEY_REMINDER_FIRED + " = 0"
+                                + " AND " + KEY_ARCHIVED + " = 0"
+                                + " AND " + KEY_TRASHED + " = 0");
         return getNotes(whereCondition, true);
     }
 
@@ -612,8 +1879,7 @@ public class DbHelper extends SQLiteOpenHelper {
      * Retrieves locked or unlocked notes
      */
     public List<Note> getNotesWithLock(boolean locked) {
-        String whereCondition = " WHERE " + KEY_LOCKED + (locked ? " = 1 " : " IS NOT 1 ");
-        return getNotes(whereCondition, true);
+        return getNotes(QueryBuilder.where(KEY_LOCKED + (locked ? " = 1" : " = 0")), true);
     }
 
 
@@ -623,9 +1889,34 @@ public class DbHelper extends SQLiteOpenHelper {
      * @return Notes list
      */
     public List<Note> getTodayReminders() {
-        String whereCondition = " WHERE DATE(" + KEY_REMINDER + "/1000, 'unixepoch') = DATE('now') AND " +
-                KEY_TRASHED + " IS NOT 1";
-        return getNotes(whereCondition, false);
+        return new ReminderQueries(this).getToday();
+    }
+
+
+    /**
+     * Retrieves notes matching passed condition sorted by reminder date
+     *
+     * @param limit Maximum number of notes to retrieve, 0 for all of them
+     * @param summaries True to retrieve notes summaries, whose content and attachments are loaded only if needed
+     */
+    List<Note> getNotesByReminder(QueryBuilder whereCondition, int limit, boolean summaries) {
+        Projection projection = summaries ? Projection.SUMMARY : Projection.FULL;
+        String orderClause = " ORDER BY " + KEY_REMINDER + ", " + KEY_ID + (limit > 0 ? " LIMIT " + limit : "");
+        String query = getNotesQuery("", whereCondition.getWhereClause(), orderClause, projection);
+        return queryNotes(query, whereCondition.getArgs(), projection, null, null);
+    }
+
+
+    long getNotesCount(QueryBuilder whereCondition) {
+        Cursor cursor = null;
+        try {
+            cursor = rawQuery("SELECT COUNT(*) FROM " + TABLE_NOTES + whereCondition.getWhereClause(),
+                    whereCondition.getArgs());
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            if (cursor != null)
+                cursor.close();
+        }
     }
 
 
@@ -633,20 +1924,17 @@ public class DbHelper extends SQLiteOpenHelper {
      * Retrieves all attachments related to specific note
      */
     public ArrayList<Attachment> getNoteAttachments(Note note) {
-        String whereCondition = " WHERE " + KEY_ATTACHMENT_NOTE_ID + " = " + note.get_id();
-        return getAttachments(whereCondition);
+        return getAttachments(QueryBuilder.where(KEY_ATTACHMENT_NOTE_ID + " = ?", note.get_id()));
     }
 
 
     public List<Note> getChecklists() {
-        String whereCondition = " WHERE " + KEY_CHECKLIST + " = 1";
-        return getNotes(whereCondition, false);
+        return getNotes(QueryBuilder.where(KEY_CHECKLIST + " = 1"), false);
     }
 
 
     public List<Note> getMasked() {
-        String whereCondition = " WHERE " + KEY_LOCKED + " = 1";
-        return getNotes(whereCondition, false);
+        return getNotes(QueryBuilder.where(KEY_LOCKED + " = 1"), false);
     }
 
 
@@ -658,13 +1946,8 @@ public class DbHelper extends SQLiteOpenHelper {
      */
     public List<Note> getNotesByCategory(Long categoryId) {
         List<Note> notes;
-		boolean filterArchived = prefs.getBoolean(Constants.PREF_FILTER_ARCHIVED_IN_CATEGORIES + categoryId, false);
         try {
-            String whereCondition = " WHERE "
-                    + KEY_CATEGORY_ID + " = " + categoryId
-					+ " AND " + KEY_TRASHED + " IS NOT 1"
-					+ (filterArchived ? " AND " + KEY_ARCHIVED + " IS NOT 1" : "");
-			notes = getNotes(whereCondition, true);
+			notes = getNotes(getCategoryCondition(categoryId), true);
         } catch (NumberFormatException e) {
             notes = getAllNotes(true);
         }
@@ -672,6 +1955,14 @@ public class DbHelper extends SQLiteOpenHelper {
     }
 
 
+    QueryBuilder getCategoryCondition(Long categoryId) {
+		boolean filterArchived = prefs.getBoolean(Constants.PREF_FILTER_ARCHIVED_IN_CATEGORIES + categoryId, false);
+        QueryBuilder whereCondition = QueryBuilder.where(KEY_CATEGORY_ID + " = ?", categoryId)
+                .and(KEY_TRASHED + " = 0");
+        return filterArchived ? whereCondition.and(KEY_ARCHIVED + " = 0") : whereCondition;
+    }
+
+
     /**
      * Retrieves all tags
      */
@@ -685,25 +1976,27 @@ public class DbHelper extends SQLiteOpenHelper {
      */
     public List<Tag> getTags(Note note) {
         List<Tag> tags = new ArrayList<>();
-        HashMap<String, Integer> tagsMap = new HashMap<>();
-
-        String whereCondition = " WHERE "
-                + (note != null ? KEY_ID + " = " + note.get_id() + " AND " : "")
-                + "(" + KEY_CONTENT + " LIKE '%#%' OR " + KEY_TITLE + " LIKE '%#%' " + ")"
-                + " AND " + KEY_TRASHED + " IS " + (Navigation.checkNavigation(Navigation.TRASH) ? "" : " NOT ") + " 1";
-        List<Note> notesRetrieved = getNotes(whereCondition, true);
-
-        for (Note noteRetrieved : notesRetrieved) {
-            HashMap<String, Integer> tagsRetrieved = TagsHelper.retrieveTags(noteRetrieved);
-            for (String s : tagsRetrieved.keySet()) {
-                int count = tagsMap.get(s) == null ? 0 : tagsMap.get(s);
-                tagsMap.put(s, ++count);
-            }
-        }
 
-        for (String s : tagsMap.keySet()) {
-            Tag tag = new Tag(s, tagsMap.get(s));
-            tags.add(tag);
+        // Tags are counted by number of notes containing them
+        QueryBuilder whereCondition = note != null
+                ? QueryBuilder.where(KEY_NOTE_TAGS_NOTE_ID + " = ?", note.get_id())
+                : new QueryBuilder();
+        whereCondition.and(KEY_TRASHED + (Navigation.checkNavigation(Navigation.TRASH) ? " = 1" : " = 0"));
+        String sql = "SELECT " + KEY_NOTE_TAGS_TAG + ", COUNT(*)"
+                + " FROM " + TABLE_NOTE_TAGS
+                + " JOIN " + TABLE_NOTES + " ON " + KEY_ID + " = " + KEY_NOTE_TAGS_NOTE_ID
+                + whereCondition.getWhereClause()
+                + " GROUP BY " + KEY_NOTE_TAGS_TAG;
+
+        Cursor cursor = null;
+        try {
+            cursor = rawQuery(sql, whereCondition.getArgs());
+            while (cursor.moveToNext()) {
+                tags.add(new Tag(cursor.getString(0), cursor.getInt(1)));
+            }
+        } finally {
+            if (cursor != null)
+                cursor.close();
         }
 
         Collections.sort(tags, (tag1, tag2) -> tag1.getText().compareToIgnoreCase(tag2.getText()));
@@ -715,10 +2008,15 @@ public class DbHelper extends SQLiteOpenHelper {
      * Retrieves all notes related to category it passed as parameter
      */
     public List<Note> getNotesByTag(String tag) {
+        return getNotesByTag(tag, null);
+    }
+
+
+    public List<Note> getNotesByTag(String tag, CancellationSignal cancellationSignal) {
         if (tag.contains(",")) {
-            return getNotesByTag(tag.split(","));
+            return getNotesByTag(tag.split(","), cancellationSignal);
         } else {
-            return getNotesByTag(new String[]{tag});
+            return getNotesByTag(new String[]{tag}, cancellationSignal);
         }
     }
 
@@ -727,40 +2025,79 @@ public class DbHelper extends SQLiteOpenHelper {
      * Retrieves all notes with specified tags
      */
     public List<Note> getNotesByTag(String[] tags) {
-        StringBuilder whereCondition = new StringBuilder();
-        whereCondition.append(" WHERE ");
-        for (int i = 0; i < tags.length; i++) {
-            if (i != 0) {
-                whereCondition.append(" AND ");
+        return getNotesByTag(tags, null);
+    }
+
+
+    public List<Note> getNotesByTag(String[] tags, CancellationSignal cancellationSignal) {
+        for (String tag : tags) {
+            if (!tag.trim().equals(UrlCompleter.parseHashtag(tag.trim()))) {
+                return getNotesByTagScan(tags, cancellationSignal);
             }
-			whereCondition.append("(" + KEY_CONTENT + " LIKE '%").append(tags[i]).append("%' OR ").append(KEY_TITLE)
-					.append(" LIKE '%").append(tags[i]).append("%')");
         }
+        // Notes must have all the tags so distinct matches are counted for each one
+        StringBuilder placeholders = new StringBuilder();
+        Object[] args = new Object[tags.length + 1];
+        for (int i = 0; i < tags.length; i++) {
+            placeholders.append(i == 0 ? "?" : ",?");
+            args[i] = tags[i].trim();
+        }
+        args[tags.length] = tags.length;
+        QueryBuilder whereCondition = QueryBuilder.where(KEY_ID + " IN ("
+                + "SELECT " + KEY_NOTE_TAGS_NOTE_ID + " FROM " + TABLE_NOTE_TAGS
+                + " WHERE " + KEY_NOTE_TAGS_TAG + " IN (" + placeholders + ")"
+                + " GROUP BY " + KEY_NOTE_TAGS_NOTE_ID
+                + " HAVING COUNT(DISTINCT " + KEY_NOTE_TAGS_TAG + ") = ?)", args);
         // Trashed notes must be included in search results only if search if performed from trash
-        whereCondition.append(" AND " + KEY_TRASHED + " IS ").append(Navigation.checkNavigation(Navigation.TRASH) ?
-                "" : "" +
-                " NOT ").append(" 1");
-
-		return rx.Observable.from(getNotes(whereCondition.toString(), true))
-				.map(note -> {
-					boolean matches = rx.Observable.from(tags)
-							.all(tag -> {
-								Pattern p = Pattern.compile(".*(\\s|^)" + tag + "(\\s|$).*", Pattern.MULTILINE);
-								return p.matcher((note.getTitle() + " " + note.getContent())).find();
-							}).toBlocking().single();
-					return matches ? note : null;
-				})
-				.filter(note -> note != null)
-				.toList().toBlocking().single();
+        whereCondition.and(KEY_TRASHED + (Navigation.checkNavigation(Navigation.TRASH) ? " = 1" : " = 0"));
+        return getNoteSummaries(whereCondition, true, cancellationSignal);
 	}
 
+
+    /**
+     * Words that are not hashtags aren't indexed, so notes containing them as whole words are searched by scanning
+     * titles and, if not locked, contents
+     */
+    private List<Note> getNotesByTagScan(String[] tags, CancellationSignal cancellationSignal) {
+        QueryBuilder whereCondition = QueryBuilder.where(KEY_TRASHED + (Navigation.checkNavigation(Navigation
+                .TRASH) ? " = 1" : " = 0"));
+        List<Pattern> patterns = new ArrayList<>();
+        for (String tag : tags) {
+            String likePattern = "%" + escapeLikePattern(tag.trim()) + "%";
+            whereCondition.and(KEY_TITLE + " LIKE ? ESCAPE '\\' OR (" + KEY_LOCKED + " IS NOT 1 AND " + KEY_ID
+                    + " IN (SELECT " + KEY_NOTE_CONTENTS_NOTE_ID + " FROM " + TABLE_NOTE_CONTENTS + " WHERE "
+                    + KEY_CONTENT + " LIKE ? ESCAPE '\\'))", likePattern, likePattern);
+            patterns.add(Pattern.compile("(\\s|^)" + Pattern.quote(tag.trim()) + "(\\s|$)", Pattern.MULTILINE));
+        }
+        List<Note> notes = new ArrayList<>();
+        for (Note note : getNotes(whereCondition.getWhereClause(), true, whereCondition.getArgs(), Projection
+                .WITHOUT_ATTACHMENTS, cancellationSignal)) {
+            String text = note.getTitle() + " " + (isTrue(note.isLocked()) ? "" : note.getContent());
+            boolean matches = true;
+            for (Pattern pattern : patterns) {
+                matches = matches && pattern.matcher(text).find();
+            }
+            if (matches) {
+                notes.add(note);
+            }
+        }
+        return notes;
+    }
+
+
     /**
      * Retrieves all uncompleted checklists
      */
     public List<Note> getNotesByUncompleteChecklist() {
-		String whereCondition = " WHERE " + KEY_CHECKLIST + " = 1 AND " + KEY_CONTENT + " LIKE '%" + it.feio.android
-				.checklistview.interfaces.Constants.UNCHECKED_SYM + "%'";
-		return getNotes(whereCondition, true);
+        return getNotesByUncompleteChecklist(null);
+    }
+
+
+    public List<Note> getNotesByUncompleteChecklist(CancellationSignal cancellationSignal) {
+		QueryBuilder whereCondition = QueryBuilder.where(KEY_CHECKLIST + " = 1 AND " + KEY_ID + " IN (SELECT "
+				+ KEY_NOTE_CONTENTS_NOTE_ID + " FROM " + TABLE_NOTE_CONTENTS + " WHERE " + KEY_CONTENT + " LIKE ?)",
+				"%" + it.feio.android.checklistview.interfaces.Constants.UNCHECKED_SYM + "%");
+		return getNoteSummaries(whereCondition, true, cancellationSignal);
 	}
 
 
@@ -778,6 +2115,21 @@ public class DbHelper extends SQLiteOpenHelper {
      * @return List of attachments
      */
     public ArrayList<Attachment> getAttachments(String whereCondition) {
+        return getAttachments(whereCondition, null);
+    }
+
+
+    /**
+     * Retrieves attachments using a condition whose values are bound to placeholders
+     *
+     * @return List of attachments
+     */
+    public ArrayList<Attachment> getAttachments(QueryBuilder whereCondition) {
+        return getAttachments(whereCondition.getWhereClause(), whereCondition.getArgs());
+    }
+
+
+    private ArrayList<Attachment> getAttachments(String whereCondition, Object[] args) {
 
         ArrayList<Attachment> attachmentsList = new ArrayList<>();
         String sql = "SELECT "
@@ -789,12 +2141,11 @@ public class DbHelper extends SQLiteOpenHelper {
                 + KEY_ATTACHMENT_MIME_TYPE
                 + " FROM " + TABLE_ATTACHMENTS
                 + whereCondition;
-        SQLiteDatabase db;
         Cursor cursor = null;
 
         try {
 
-            cursor = getDatabase().rawQuery(sql, null);
+            cursor = rawQuery(sql, args);
 
             // Looping through all rows and adding to list
             if (cursor.moveToFirst()) {
@@ -821,7 +2172,6 @@ public class DbHelper extends SQLiteOpenHelper {
      * @return List of categories
      */
     public ArrayList<Category> getCategories() {
-        ArrayList<Category> categoriesList = new ArrayList<>();
         String sql = "SELECT "
                 + KEY_CATEGORY_ID + ","
                 + KEY_CATEGORY_NAME + ","
@@ -832,7 +2182,7 @@ public class DbHelper extends SQLiteOpenHelper {
                 + " LEFT JOIN ("
                 + " SELECT " + KEY_ID + ", " + KEY_CATEGORY
                 + " FROM " + TABLE_NOTES
-                + " WHERE " + KEY_TRASHED + " IS NOT 1"
+                + " WHERE " + KEY_TRASHED + " = 0"
                 + ") USING( " + KEY_CATEGORY + ") "
                 + " GROUP BY "
                 + KEY_CATEGORY_ID + ","
@@ -841,6 +2191,12 @@ public class DbHelper extends SQLiteOpenHelper {
                 + KEY_CATEGORY_COLOR
                 + " ORDER BY IFNULL(NULLIF(" + KEY_CATEGORY_NAME + ", ''),'zzzzzzzz') ";
 
+        long generation = queryCache.getGeneration();
+        ArrayList<Category> categoriesList = queryCache.get(sql);
+        if (categoriesList != null) {
+            return copyCategories(categoriesList);
+        }
+        categoriesList = new ArrayList<>();
         Cursor cursor = null;
         try {
             cursor = getDatabase().rawQuery(sql, null);
@@ -857,7 +2213,18 @@ public class DbHelper extends SQLiteOpenHelper {
             if (cursor != null)
                 cursor.close();
         }
-        return categoriesList;
+        queryCache.put(sql, generation, categoriesList);
+        return copyCategories(categoriesList);
+    }
+
+
+    private ArrayList<Category> copyCategories(List<Category> categories) {
+        ArrayList<Category> copies = new ArrayList<>(categories.size());
+        for (Category category : categories) {
+            copies.add(new Category(category.getId(), category.getName(), category.getDescription(),
+                    category.getColor(), category.getCount()));
+        }
+        return copies;
     }
 
 
@@ -876,6 +2243,7 @@ public class DbHelper extends SQLiteOpenHelper {
         values.put(KEY_CATEGORY_COLOR, category.getColor());
 		getDatabase(true).insertWithOnConflict(TABLE_CATEGORY, KEY_CATEGORY_ID, values, SQLiteDatabase
 				.CONFLICT_REPLACE);
+		notifyTablesChanged(TABLE_CATEGORY);
 		return category;
     }
 
@@ -901,6 +2269,7 @@ public class DbHelper extends SQLiteOpenHelper {
         // Delete category
         deleted = db.delete(TABLE_CATEGORY, KEY_CATEGORY_ID + " = ?",
                 new String[]{String.valueOf(category.getId())});
+        notifyTablesChanged(TABLE_NOTES, TABLE_CATEGORY);
         return deleted;
     }
 
@@ -916,11 +2285,11 @@ public class DbHelper extends SQLiteOpenHelper {
                 + KEY_CATEGORY_DESCRIPTION + ","
                 + KEY_CATEGORY_COLOR
                 + " FROM " + TABLE_CATEGORY
-                + " WHERE " + KEY_CATEGORY_ID + " = " + id;
+                + " WHERE " + KEY_CATEGORY_ID + " = ?";
 
         Cursor cursor = null;
         try {
-            cursor = getDatabase().rawQuery(sql, null);
+            cursor = rawQuery(sql, new Object[]{id});
 
             // Looping through all rows and adding to list
             if (cursor.moveToFirst()) {
@@ -937,113 +2306,135 @@ public class DbHelper extends SQLiteOpenHelper {
 
 
     public int getCategorizedCount(Category category) {
-        int count = 0;
-        String sql = "SELECT COUNT(*)"
-                + " FROM " + TABLE_NOTES
-                + " WHERE " + KEY_CATEGORY + " = " + category.getId();
+        if (category.getId() == null) {
+            return 0;
+        }
+        SQLiteStatement statement = getStatement("SELECT COUNT(*) FROM " + TABLE_NOTES + " WHERE " + KEY_CATEGORY
+                + " = ?");
+        synchronized (statement) {
+            statement.bindLong(1, category.getId());
+            return (int) statement.simpleQueryForLong();
+        }
+    }
 
+
+    /**
+     * Counts notes of the navigation entries with a single grouped query. Each note is counted as trashed, archived,
+     * with reminder or active (in this priority order) and also as uncategorized when it has no category.
+     *
+     * @return Counts keyed by {@link Navigation} constants
+     */
+    public Map<Integer, Integer> getNavigationCounts() {
+        Map<Integer, Integer> counts = new HashMap<>();
+        String sql = "SELECT CASE"
+                + " WHEN " + KEY_TRASHED + " = 1 THEN " + Navigation.TRASH
+                + " WHEN " + KEY_ARCHIVED + " = 1 THEN " + Navigation.ARCHIVE
+                + " WHEN " + KEY_REMINDER + " IS NOT NULL THEN " + Navigation.REMINDERS
+                + " ELSE " + Navigation.NOTES + " END navigation,"
+                + " COUNT(*),"
+                + " SUM(CAST(IFNULL(" + KEY_CATEGORY + ", 0) AS INTEGER) = 0)"
+                + " FROM " + TABLE_NOTES
+                + " GROUP BY navigation";
+        int uncategorized = 0;
         Cursor cursor = null;
         try {
-            cursor = getDatabase().rawQuery(sql, null);
-
-            // Looping through all rows and adding to list
-            if (cursor.moveToFirst()) {
-                count = cursor.getInt(0);
+            cursor = rawQuery(sql, null);
+            while (cursor.moveToNext()) {
+                counts.put(cursor.getInt(0), cursor.getInt(1));
+                uncategorized += cursor.getInt(2);
             }
-
         } finally {
             if (cursor != null)
                 cursor.close();
         }
-        return count;
+        counts.put(Navigation.UNCATEGORIZED, uncategorized);
+        return counts;
     }
 
 
     /**
-     * Retrieves statistics data based on app usage
+     * Retrieves statistics data based on app usage. Counters are computed by aggregate queries, words and chars
+     * ones on counts persisted when notes are saved.
      */
     public Stats getStats() {
         Stats mStats = new Stats();
 
         // Categories
-        mStats.setCategories(getCategories().size());
+        mStats.setCategories((int) DatabaseUtils.queryNumEntries(getDatabase(), TABLE_CATEGORY));
 
         // Everything about notes and their text stats
-        int notesActive = 0, notesArchived = 0, notesTrashed = 0, reminders = 0, remindersFuture = 0, checklists = 0,
-                notesMasked = 0, tags = 0, locations = 0;
-        int totalWords = 0, totalChars = 0, maxWords = 0, maxChars = 0, avgWords = 0, avgChars = 0;
-        int words, chars;
-        List<Note> notes = getAllNotes(false);
-        for (Note note : notes) {
-            if (note.isTrashed()) {
-                notesTrashed++;
-            } else if (note.isArchived()) {
-                notesArchived++;
-            } else {
-                notesActive++;
-            }
-            if (note.getAlarm() != null && Long.parseLong(note.getAlarm()) > 0) {
-                if (Long.parseLong(note.getAlarm()) > Calendar.getInstance().getTimeInMillis()) {
-                    remindersFuture++;
-                } else {
-                    reminders++;
-                }
-            }
-            if (note.isChecklist()) {
-                checklists++;
-            }
-            if (note.isLocked()) {
-                notesMasked++;
-            }
-            tags += TagsHelper.retrieveTags(note).size();
-            if (note.getLongitude() != null && note.getLongitude() != 0) {
-                locations++;
-            }
-            words = NotesHelper.getWords(note);
-            chars = NotesHelper.getChars(note);
-            if (words > maxWords) {
-                maxWords = words;
-            }
-            if (chars > maxChars) {
-                maxChars = chars;
+        updateMissingTextCounts();
+        long now = Calendar.getInstance().getTimeInMillis();
+        String sql = "SELECT "
+                + "COUNT(*),"
+                + " SUM(" + KEY_TRASHED + " IS NOT 1 AND " + KEY_ARCHIVED + " IS NOT 1),"
+                + " SUM(" + KEY_TRASHED + " IS NOT 1 AND " + KEY_ARCHIVED + " = 1),"
+                + " SUM(" + KEY_TRASHED + " = 1),"
+                + " SUM(" + KEY_REMINDER + " > 0 AND " + KEY_REMINDER + " <= ?),"
+                + " SUM(" + KEY_REMINDER + " > ?),"
+                + " SUM(" + KEY_CHECKLIST + " = 1),"
+                + " SUM(" + KEY_LOCKED + " = 1),"
+                + " SUM(" + KEY_LONGITUDE + " IS NOT NULL AND " + KEY_LONGITUDE + " != 0),"
+                + " SUM(" + KEY_WORDS + "),"
+                + " MAX(" + KEY_WORDS + "),"
+                + " SUM(" + KEY_CHARS + "),"
+                + " MAX(" + KEY_CHARS + ")"
+                + " FROM " + TABLE_NOTES;
+        Cursor cursor = null;
+        try {
+            cursor = rawQuery(sql, new Object[]{now, now});
+            if (cursor.moveToFirst()) {
+                int notes = cursor.getInt(0);
+                mStats.setNotesActive(cursor.getInt(1));
+                mStats.setNotesArchived(cursor.getInt(2));
+                mStats.setNotesTrashed(cursor.getInt(3));
+                mStats.setReminders(cursor.getInt(4));
+                mStats.setRemindersFutures(cursor.getInt(5));
+                mStats.setNotesChecklist(cursor.getInt(6));
+                mStats.setNotesMasked(cursor.getInt(7));
+                mStats.setLocation(cursor.getInt(8));
+                mStats.setWords(cursor.getInt(9));
+                mStats.setWordsMax(cursor.getInt(10));
+                mStats.setWordsAvg(cursor.getInt(9) / (notes != 0 ? notes : 1));
+                mStats.setChars(cursor.getInt(11));
+                mStats.setCharsMax(cursor.getInt(12));
+                mStats.setCharsAvg(cursor.getInt(11) / (notes != 0 ? notes : 1));
             }
-            totalWords += words;
-            totalChars += chars;
-        }
-        mStats.setNotesActive(notesActive);
-        mStats.setNotesArchived(notesArchived);
-        mStats.setNotesTrashed(notesTrashed);
-        mStats.setReminders(reminders);
-        mStats.setRemindersFutures(remindersFuture);
-        mStats.setNotesChecklist(checklists);
-        mStats.setNotesMasked(notesMasked);
-        mStats.setTags(tags);
-        mStats.setLocation(locations);
-        avgWords = totalWords / (notes.size() != 0 ? notes.size() : 1);
-		avgChars = totalChars / (notes.size() != 0 ? notes.size() : 1);
-
-        mStats.setWords(totalWords);
-        mStats.setWordsMax(maxWords);
-        mStats.setWordsAvg(avgWords);
-        mStats.setChars(totalChars);
-        mStats.setCharsMax(maxChars);
-        mStats.setCharsAvg(avgChars);
+        } finally {
+            if (cursor != null)
+                cursor.close();
+        }
+
+        // Tags of each note
+        mStats.setTags((int) DatabaseUtils.queryNumEntries(getDatabase(), TABLE_NOTE_TAGS));
 
         // Everything about attachments
         int attachmentsAll = 0, images = 0, videos = 0, audioRecordings = 0, sketches = 0, files = 0;
-        List<Attachment> attachments = getAllAttachments();
-        for (Attachment attachment : attachments) {
-            if (Constants.MIME_TYPE_IMAGE.equals(attachment.getMime_type())) {
-                images++;
-            } else if (Constants.MIME_TYPE_VIDEO.equals(attachment.getMime_type())) {
-                videos++;
-            } else if (Constants.MIME_TYPE_AUDIO.equals(attachment.getMime_type())) {
-                audioRecordings++;
-            } else if (Constants.MIME_TYPE_SKETCH.equals(attachment.getMime_type())) {
-                sketches++;
-            } else if (Constants.MIME_TYPE_FILES.equals(attachment.getMime_type())) {
-                files++;
+        sql = "SELECT " + KEY_ATTACHMENT_MIME_TYPE + ", COUNT(*)"
+                + " FROM " + TABLE_ATTACHMENTS
+                + " GROUP BY " + KEY_ATTACHMENT_MIME_TYPE;
+        cursor = null;
+        try {
+            cursor = rawQuery(sql, null);
+            while (cursor.moveToNext()) {
+                String mimeType = cursor.getString(0);
+                int count = cursor.getInt(1);
+                attachmentsAll += count;
+                if (Constants.MIME_TYPE_IMAGE.equals(mimeType)) {
+                    images = count;
+                } else if (Constants.MIME_TYPE_VIDEO.equals(mimeType)) {
+                    videos = count;
+                } else if (Constants.MIME_TYPE_AUDIO.equals(mimeType)) {
+                    audioRecordings = count;
+                } else if (Constants.MIME_TYPE_SKETCH.equals(mimeType)) {
+                    sketches = count;
+                } else if (Constants.MIME_TYPE_FILES.equals(mimeType)) {
+                    files = count;
+                }
             }
+        } finally {
+            if (cursor != null)
+                cursor.close();
         }
         mStats.setAttachments(attachmentsAll);
         mStats.setImages(images);
@@ -1056,10 +2447,45 @@ public class DbHelper extends SQLiteOpenHelper {
     }
 
 
+    /**
+     * Computes and persists words and chars counts of notes saved before they were introduced
+     */
+    private void updateMissingTextCounts() {
+        List<Note> notes = getNotes(QueryBuilder.where(KEY_WORDS + " IS NULL OR " + KEY_CHARS + " IS NULL"), false,
+                false);
+        if (notes.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = getDatabase(true);
+        db.beginTransactionNonExclusive();
+        SQLiteStatement statement = db.compileStatement("UPDATE " + TABLE_NOTES + " SET " + KEY_WORDS + " = ?, "
+                + KEY_CHARS + " = ? WHERE " + KEY_ID + " = ?");
+        try {
+            for (Note note : notes) {
+                statement.bindLong(1, NotesHelper.getWords(note));
+                statement.bindLong(2, NotesHelper.getChars(note));
+                statement.bindLong(3, note.get_id());
+                statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            statement.close();
+            db.endTransaction();
+        }
+        // Counts are not read by observed queries, dropping cached results is enough
+        queryCache.invalidate();
+    }
+
+
     public void setReminderFired(long noteId, boolean fired) {
-        ContentValues values = new ContentValues();
-        values.put(KEY_REMINDER_FIRED, fired);
-        getDatabase(true).update(TABLE_NOTES, values, KEY_ID + " = ?", new String[]{String.valueOf(noteId)});
+        SQLiteStatement statement = getStatement("UPDATE " + TABLE_NOTES + " SET " + KEY_REMINDER_FIRED + " = ? WHERE "
+                + KEY_ID + " = ?");
+        synchronized (statement) {
+            statement.bindLong(1, fired ? 1 : 0);
+            statement.bindLong(2, noteId);
+            statement.executeUpdateDelete();
+        }
+        notifyTablesChanged(TABLE_NOTES);
     }
 
 
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2013-2019 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.db;
+
+
+/**
+ * Keyset pagination state used by {@link DbHelper#getNotesPage(NotesPage)}: it keeps sorting value and id of the
+ * last retrieved note to ask for the following page.
+ */
+public class NotesPage {
+
+    public static final int DEFAULT_SIZE = 50;
+
+    private final Long categoryId;
+    private final int firstPageSize;
+    private String sortColumn;
+    private Object lastSortValue;
+    private Long lastId;
+    private boolean completed;
+
+
+    /**
+     * Pagination of notes of the current navigation
+     */
+    public NotesPage() {
+        this(null, DEFAULT_SIZE);
+    }
+
+
+    /**
+     * @param categoryId    Category whose notes must be retrieved, or null to use current navigation
+     * @param firstPageSize Size of the first page, following ones will be of {@link #DEFAULT_SIZE} notes
+     */
+    public NotesPage(Long categoryId, int firstPageSize) {
+        this.categoryId = categoryId;
+        this.firstPageSize = Math.max(firstPageSize, 1);
+    }
+
+
+    public Long getCategoryId() {
+        return categoryId;
+    }
+
+
+    public int getSize() {
+        return isFirst() ? firstPageSize : DEFAULT_SIZE;
+    }
+
+
+    public boolean isFirst() {
+        return lastId == null;
+    }
+
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+
+    void setCompleted(boolean completed) {
+        this.completed = completed;
+    }
+
+
+    /**
+     * Sorting column is fixed on first page retrieval to keep pages consistent
+     */
+    String getSortColumn() {
+        return sortColumn;
+    }
+
+
+    void setSortColumn(String sortColumn) {
+        this.sortColumn = sortColumn;
+    }
+
+
+    Object getLastSortValue() {
+        return lastSortValue;
+    }
+
+
+    Long getLastId() {
+        return lastId;
+    }
+
+
+    void moveTo(Object lastSortValue, Long lastId) {
+        this.lastSortValue = lastSortValue;
+        this.lastId = lastId;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2013-2019 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.db;
+
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteProgram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Builds WHERE clauses keeping values out of SQL text: every value is passed through a '?' placeholder and bound
+ * with its own type, so the same query always has the same text and its compiled statement is reused from
+ * SQLite connection's cache instead of being parsed and planned again.
+ */
+public class QueryBuilder {
+
+    private final StringBuilder condition = new StringBuilder();
+    private final List<Object> args = new ArrayList<>();
+
+
+    public static QueryBuilder where(String expression, Object... args) {
+        return new QueryBuilder().and(expression, args);
+    }
+
+
+    /**
+     * Adds an expression in AND with the previous ones
+     *
+     * @param expression SQL expression with a '?' placeholder for each value
+     * @param args       Values bound in the same order of placeholders
+     */
+    public QueryBuilder and(String expression, Object... args) {
+        if (condition.length() > 0) {
+            condition.append(" AND ");
+        }
+        condition.append("(").append(expression).append(")");
+        Collections.addAll(this.args, args);
+        return this;
+    }
+
+
+    /**
+     * @return WHERE clause or empty string if no expressions have been added
+     */
+    public String getWhereClause() {
+        return condition.length() > 0 ? " WHERE " + condition : "";
+    }
+
+
+    public Object[] getArgs() {
+        return args.toArray();
+    }
+
+
+    /**
+     * Cursor factory binding values to the query it creates cursor for
+     */
+    static SQLiteDatabase.CursorFactory getCursorFactory(Object[] args) {
+        return (db, masterQuery, editTable, query) -> {
+            bind(query, args);
+            return new SQLiteCursor(masterQuery, editTable, query);
+        };
+    }
+
+
+    /**
+     * Binds values to a compiled statement: numbers and booleans as integers (so they match columns and expressions
+     * without affinity too) and everything else as text.
+     */
+    static void bind(SQLiteProgram program, Object[] args) {
+        if (args == null) {
+            return;
+        }
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg == null) {
+                program.bindNull(i + 1);
+            } else if (arg instanceof Boolean) {
+                program.bindLong(i + 1, (Boolean) arg ? 1 : 0);
+            } else if (arg instanceof Double || arg instanceof Float) {
+                program.bindDouble(i + 1, ((Number) arg).doubleValue());
+            } else if (arg instanceof Number) {
+                program.bindLong(i + 1, ((Number) arg).longValue());
+            } else if (arg instanceof byte[]) {
+                program.bindBlob(i + 1, (byte[]) arg);
+            } else {
+                program.bindString(i + 1, arg.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2013-2019 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Bounded LRU cache of query results. Every write on database must call {@link #invalidate()}: this bumps a
+ * generation counter and results stored with a previous generation are no longer returned. Generation must be read
+ * <b>before</b> running the query, so a result computed while a write was happening is never considered fresh.
+ */
+public class QueryCache {
+
+    private final LinkedHashMap<String, Entry> entries;
+    private volatile long generation;
+    private long hits;
+    private long misses;
+
+
+    public QueryCache(final int maxSize) {
+        entries = new LinkedHashMap<String, Entry>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+
+    /**
+     * @return Current write generation, to be passed to {@link #put(String, long, Object)}
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+
+    /**
+     * Marks all cached results as stale
+     */
+    public synchronized void invalidate() {
+        generation++;
+        entries.clear();
+    }
+
+
+    /**
+     * @return Cached result for the given key or null if missing or stale
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.generation != generation) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return (T) entry.value;
+    }
+
+
+    /**
+     * Stores a result computed while the given generation was current
+     */
+    public synchronized void put(String key, long generation, Object value) {
+        if (generation == this.generation) {
+            entries.put(key, new Entry(generation, value));
+        }
+    }
+
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+
+    private static class Entry {
+
+        final long generation;
+        final Object value;
+
+
+        Entry(long generation, Object value) {
+            this.generation = generation;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2013-2019 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.db;
+
+import it.feio.android.omninotes.helpers.date.RecurrenceHelper;
+import it.feio.android.omninotes.models.Note;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Queries on pending reminders of active notes. Local day bounds are computed once when created, so that
+ * queries compare reminder dates with plain values and can use the index on them.
+ */
+public class ReminderQueries {
+
+    private final DbHelper dbHelper;
+    private final long now;
+    private final long todayStart;
+    private final long tomorrowStart;
+    private final long dayAfterTomorrowStart;
+
+
+    public ReminderQueries(DbHelper dbHelper) {
+        this(dbHelper, Calendar.getInstance());
+    }
+
+
+    ReminderQueries(DbHelper dbHelper, Calendar now) {
+        this.dbHelper = dbHelper;
+        this.now = now.getTimeInMillis();
+        Calendar day = (Calendar) now.clone();
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
+        todayStart = day.getTimeInMillis();
+        day.add(Calendar.DAY_OF_MONTH, 1);
+        tomorrowStart = day.getTimeInMillis();
+        day.add(Calendar.DAY_OF_MONTH, 1);
+        dayAfterTomorrowStart = day.getTimeInMillis();
+    }
+
+
+    /**
+     * Retrieves the first upcoming reminders
+     *
+     * @param count Maximum number of reminders to retrieve, 0 for all of them
+     */
+    public List<Note> getNext(int count) {
+        return dbHelper.getNotesByReminder(getRangeCondition(now, Long.MAX_VALUE), count, true);
+    }
+
+
+    /**
+     * Retrieves the first reminders not fired yet set after passed date, also when their date is already passed
+     *
+     * @param count Maximum number of reminders to retrieve, 0 for all of them
+     */
+    public List<Note> getNextAfter(long from, int count) {
+        return dbHelper.getNotesByReminder(getRangeCondition(from + 1, Long.MAX_VALUE), count, true);
+    }
+
+
+    public List<Note> getToday() {
+        return getOccurring(todayStart, tomorrowStart - 1);
+    }
+
+
+    public List<Note> getTomorrow() {
+        return getOccurring(tomorrowStart, dayAfterTomorrowStart - 1);
+    }
+
+
+    /**
+     * Retrieves reminders occurring between passed dates, including recurrent ones set before but repeating there
+     */
+    public List<Note> getOccurring(long from, long to) {
+        List<Note> candidates = dbHelper.getNotesByReminder(getOccurrencesCondition(from, to), 0, true);
+        Map<Long, List<Long>> occurrences = RecurrenceHelper.getOccurrences(candidates, from, to);
+        List<Note> occurring = new ArrayList<>();
+        for (Note note : candidates) {
+            if (occurrences.containsKey(note.get_id())) {
+                occurring.add(note);
+            }
+        }
+        return occurring;
+    }
+
+
+    /**
+     * Retrieves reminders whose date is passed without being fired
+     */
+    public List<Note> getOverdue() {
+        return dbHelper.getNotesByReminder(getRangeCondition(0, now - 1), 0, true);
+    }
+
+
+    /**
+     * Retrieves whole notes whose reminder is due, starting from passed date
+     */
+    public List<Note> getDue(long from) {
+        return dbHelper.getNotesByReminder(getRangeCondition(from, now), 0, false);
+    }
+
+
+    /**
+     * Date used as current one by queries
+     */
+    public long getNow() {
+        return now;
+    }
+
+
+    public long getPendingCount() {
+        return dbHelper.getNotesCount(getRangeCondition(0, Long.MAX_VALUE));
+    }
+
+
+    /**
+     * Reminders set in the range or recurring from before it
+     */
+    QueryBuilder getOccurrencesCondition(long from, long to) {
+        return QueryBuilder.where(DbHelper.KEY_REMINDER + " <= ?", to)
+                .and("(" + DbHelper.KEY_REMINDER + " >= ? OR " + DbHelper.KEY_RECURRENCE_RULE + " != '')", from)
+                .and(DbHelper.KEY_REMINDER_FIRED + " = 0")
+                .and(DbHelper.KEY_ARCHIVED + " = 0 AND " + DbHelper.KEY_TRASHED + " = 0");
+    }
+
+
+    QueryBuilder getRangeCondition(long from, long to) {
+        return QueryBuilder.where(DbHelper.KEY_REMINDER + " BETWEEN ? AND ?", from, to)
+                .and(DbHelper.KEY_REMINDER_FIRED + " = 0")
+                .and(DbHelper.KEY_ARCHIVED + " = 0 AND " + DbHelper.KEY_TRASHED + " = 0");
+    }
+
+}
@@ -18,41 +18,51 @@
 package it.feio.android.omninotes.extensions;
 
 import android.annotation.SuppressLint;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
-import android.support.v4.content.LocalBroadcastManager;
 import com.google.android.apps.dashclock.api.DashClockExtension;
 import com.google.android.apps.dashclock.api.ExtensionData;
 import it.feio.android.omninotes.MainActivity;
 import it.feio.android.omninotes.R;
 import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.db.ReminderQueries;
 import it.feio.android.omninotes.models.Note;
-import it.feio.android.omninotes.utils.Constants;
+import it.feio.android.omninotes.utils.Navigation;
 import it.feio.android.omninotes.utils.TextHelper;
-import it.feio.android.omninotes.utils.date.DateUtils;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
 
 import java.util.*;
 
 
 public class ONDashClockExtension extends DashClockExtension {
 
-    private enum Counters {ACTIVE, REMINDERS, TODAY, TOMORROW}
-
-
-    private DashClockUpdateReceiver mDashClockReceiver;
+    private Subscription countersSubscription;
+    private NotesCounters notesCounters;
 
 
     @Override
     protected void onInitialize(boolean isReconnect) {
         super.onInitialize(isReconnect);
-        LocalBroadcastManager broadcastMgr = LocalBroadcastManager.getInstance(this);
-        if (mDashClockReceiver != null) {
-            broadcastMgr.unregisterReceiver(mDashClockReceiver);
+        if (countersSubscription != null) {
+            countersSubscription.unsubscribe();
+        }
+        // Counters are retrieved again only when notes change
+        countersSubscription = DbHelper.getInstance().createQuery(NotesCounters::new, DbHelper.TABLE_NOTES)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(counters -> {
+                    notesCounters = counters;
+                    onUpdateData(UPDATE_REASON_CONTENT_CHANGED);
+                });
+    }
+
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (countersSubscription != null) {
+            countersSubscription.unsubscribe();
         }
-        mDashClockReceiver = new DashClockUpdateReceiver();
-        broadcastMgr.registerReceiver(mDashClockReceiver, new IntentFilter(Constants.INTENT_UPDATE_DASHCLOCK));
     }
 
 
@@ -60,29 +70,33 @@ public class ONDashClockExtension extends DashClockExtension {
     @Override
     protected void onUpdateData(int reason) {
 
-        Map<Counters, List<Note>> notesCounters = getNotesCounters();
-        int reminders = notesCounters.get(Counters.REMINDERS).size();
+        // Update will be published as soon as counters are loaded
+        if (notesCounters == null) {
+            return;
+        }
+
+        long reminders = notesCounters.reminders;
 
         StringBuilder expandedTitle = new StringBuilder();
-        expandedTitle.append(notesCounters.get(Counters.ACTIVE).size()).append(" ").append(getString(R.string.notes).toLowerCase());
+        expandedTitle.append(notesCounters.active).append(" ").append(getString(R.string.notes).toLowerCase());
         if (reminders > 0) {
             expandedTitle.append(", ").append(reminders).append(" ").append(getString(R.string.reminders));
         }
 
         StringBuilder expandedBody = new StringBuilder();
 
-		if (notesCounters.get(Counters.TODAY).size() > 0) {
-			expandedBody.append(notesCounters.get(Counters.TODAY).size()).append(" ").append(getString(R.string.today)).append(":");
-			for (Note todayReminder : notesCounters.get(Counters.TODAY)) {
+		if (notesCounters.today.size() > 0) {
+			expandedBody.append(notesCounters.today.size()).append(" ").append(getString(R.string.today)).append(":");
+			for (Note todayReminder : notesCounters.today) {
 				expandedBody.append(System.getProperty("line.separator")).append(("☆ ")).append(getNoteTitle(this,
 						todayReminder));
 			}
 			expandedBody.append("\n");
 		}
 
-		if (notesCounters.get(Counters.TOMORROW).size() > 0) {
-			expandedBody.append(notesCounters.get(Counters.TOMORROW).size()).append(" ").append(getString(R.string.tomorrow)).append(":");
-			for (Note tomorrowReminder : notesCounters.get(Counters.TOMORROW)) {
+		if (notesCounters.tomorrow.size() > 0) {
+			expandedBody.append(notesCounters.tomorrow.size()).append(" ").append(getString(R.string.tomorrow)).append(":");
+			for (Note tomorrowReminder : notesCounters.tomorrow) {
 				expandedBody.append(System.getProperty("line.separator")).append(("☆ ")).append(getNoteTitle(this,
 						tomorrowReminder));
 			}
@@ -94,7 +108,7 @@ public class ONDashClockExtension extends DashClockExtension {
         publishUpdate(new ExtensionData()
                 .visible(true)
                 .icon(R.drawable.ic_stat_literal_icon)
-                .status(String.valueOf(notesCounters.get(Counters.ACTIVE).size()))
+                .status(String.valueOf(notesCounters.active))
                 .expandedTitle(expandedTitle.toString())
                 .expandedBody(expandedBody.toString())
                 .clickIntent(launchIntent));
@@ -106,38 +120,31 @@ public class ONDashClockExtension extends DashClockExtension {
 	}
 
 
-	private Map<Counters, List<Note>> getNotesCounters() {
-        Map noteCounters = new HashMap<>();
-        List<Note> activeNotes = new ArrayList<>();
-        List<Note> reminders = new ArrayList<>();
-        List<Note> today = new ArrayList<>();
-        List<Note> tomorrow = new ArrayList<>();
-        for (Note note : DbHelper.getInstance().getNotesActive()) {
-            activeNotes.add(note);
-            if (note.getAlarm() != null && !note.isReminderFired()) {
-                reminders.add(note);
-                if (DateUtils.isSameDay(Long.valueOf(note.getAlarm()), Calendar.getInstance().getTimeInMillis())) {
-                    today.add(note);
-				} else if ((Long.valueOf(note.getAlarm()) - Calendar.getInstance().getTimeInMillis()) / (1000 * 60 *
-						60) < 24) {
-					tomorrow.add(note);
-				}
-            }
-        }
-        noteCounters.put(Counters.ACTIVE, activeNotes);
-        noteCounters.put(Counters.REMINDERS, reminders);
-        noteCounters.put(Counters.TODAY, today);
-        noteCounters.put(Counters.TOMORROW, tomorrow);
-        return noteCounters;
-    }
+	/**
+	 * Active notes and pending reminders counters, reminders are retrieved by date directly from database
+	 */
+	private static class NotesCounters {
 
+		private final int active;
+		private final long reminders;
+		private final List<Note> today;
+		private final List<Note> tomorrow;
 
-    public class DashClockUpdateReceiver extends BroadcastReceiver {
 
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            onUpdateData(UPDATE_REASON_MANUAL);
-        }
+		NotesCounters(DbHelper dbHelper) {
+			Map<Integer, Integer> navigationCounts = dbHelper.getNavigationCounts();
+			active = getCount(navigationCounts, Navigation.NOTES) + getCount(navigationCounts, Navigation.REMINDERS);
+			ReminderQueries reminderQueries = new ReminderQueries(dbHelper);
+			reminders = reminderQueries.getPendingCount();
+			today = reminderQueries.getToday();
+			tomorrow = reminderQueries.getTomorrow();
+		}
+
+
+		private static int getCount(Map<Integer, Integer> navigationCounts, int navigation) {
+			Integer count = navigationCounts.get(navigation);
+			return count != null ? count : 0;
+		}
+	}
 
-    }
 }
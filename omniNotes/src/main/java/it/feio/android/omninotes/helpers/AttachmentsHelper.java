@@ -18,11 +18,16 @@
 package it.feio.android.omninotes.helpers;
 
 
+import android.content.Context;
+
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
+import java.util.List;
 
+import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.models.Attachment;
+import it.feio.android.omninotes.utils.StorageHelper;
 
 
 public class AttachmentsHelper {
@@ -41,6 +46,56 @@ public class AttachmentsHelper {
 		return FileUtils.byteCountToDisplaySize(sizeInKb);
 	}
 
+	/**
+	 * Deletes files of removed attachments unless they're shared with other saved attachments or with the ones still
+	 * in use, since attachments with identical content share the same file
+	 *
+	 * @param removedAttachments Attachments being removed, eventually still saved
+	 * @param usedAttachments    Attachments still in use, eventually not saved yet
+	 */
+	public static void deleteUnusedFiles(Context mContext, List<Attachment> removedAttachments, List<Attachment>
+			usedAttachments) {
+		StorageHelper.releaseAttachmentsFiles(removedAttachments);
+		for (Attachment removedAttachment : removedAttachments) {
+			if (!isFileUsed(removedAttachment, usedAttachments)) {
+				deleteFileIfUnused(mContext, removedAttachment, removedAttachments);
+			}
+		}
+	}
+
+
+	/**
+	 * Deletes attachment file unless used by saved attachments, other than the excluded ones, or handed out to
+	 * attachments not saved yet. Check and deletion happen under the lock of
+	 * {@link StorageHelper#storeByContent(File, long)}, so a file can't be deleted while being shared with a new
+	 * attachment.
+	 *
+	 * @param excludedAttachments Saved attachments not to be considered, like the ones being removed
+	 * @return True if file has been deleted
+	 */
+	public static boolean deleteFileIfUnused(Context mContext, Attachment attachment, List<Attachment>
+			excludedAttachments) {
+		File file = new File(attachment.getUri().getPath());
+		synchronized (StorageHelper.class) {
+			if (StorageHelper.isUsedByUnsavedAttachments(file)
+					|| DbHelper.getInstance().isAttachmentFileUsed(attachment.getUri(), excludedAttachments)) {
+				return false;
+			}
+			return StorageHelper.delete(mContext, file.getAbsolutePath());
+		}
+	}
+
+
+	private static boolean isFileUsed(Attachment attachment, List<Attachment> usedAttachments) {
+		for (Attachment usedAttachment : usedAttachments) {
+			if (usedAttachment.getUri().equals(attachment.getUri())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
 	/**
 	 * Checks type of attachment
 	 *
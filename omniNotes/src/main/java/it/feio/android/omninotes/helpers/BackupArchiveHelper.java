@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2013-2019 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.helpers;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import it.feio.android.omninotes.OmniNotes;
+import it.feio.android.omninotes.R;
+import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.models.Attachment;
+import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.utils.Constants;
+import it.feio.android.omninotes.utils.StorageHelper;
+import it.feio.android.omninotes.utils.TextHelper;
+import it.feio.android.omninotes.utils.notifications.NotificationsHelper;
+
+
+/**
+ * Single file backup format: a zip archive holding a notes entry with a json note per line, followed by
+ * attachments entries and eventually settings. Archives are written and read with a single sequential pass,
+ * keeping in memory just a batch of notes.
+ */
+public class BackupArchiveHelper {
+
+	public static final String ARCHIVE_EXTENSION = ".zip";
+	static final String NOTES_ENTRY = "notes.jsonl";
+
+	private static final String CHARSET = "UTF-8";
+	private static final int NOTES_BATCH_SIZE = 200;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+
+	public static File getArchive(String backupName) {
+		return new File(StorageHelper.getExternalStoragePublicDir(), backupName + ARCHIVE_EXTENSION);
+	}
+
+
+	public static boolean isArchive(File backup) {
+		return backup.isFile() && backup.getName().endsWith(ARCHIVE_EXTENSION);
+	}
+
+
+	/**
+	 * Exports data to an archive that replaces the existing one only once completely written
+	 *
+	 * @return True if success, false otherwise
+	 */
+	public static boolean exportArchive(File archive, boolean includeSettings, NotificationsHelper
+			notificationsHelper) {
+		File tmpArchive = new File(archive.getParentFile(), archive.getName() + ".tmp");
+		ZipOutputStream zos = null;
+		boolean written = false;
+		boolean result = false;
+		try {
+			zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmpArchive), BUFFER_SIZE));
+			writeNotes(zos);
+			result = writeAttachments(zos, notificationsHelper);
+			if (includeSettings) {
+				File preferences = StorageHelper.getSharedPreferencesFile(OmniNotes.getAppContext());
+				writeEntry(zos, preferences.getName(), new FileInputStream(preferences), Deflater.DEFAULT_COMPRESSION);
+			}
+			zos.close();
+			written = true;
+		} catch (IOException e) {
+			Log.e(Constants.TAG, "Error writing backup archive " + archive.getName(), e);
+		} finally {
+			IOUtils.closeQuietly(zos);
+		}
+		if (!written) {
+			tmpArchive.delete();
+			return false;
+		}
+		return tmpArchive.renameTo(archive) && result;
+	}
+
+
+	private static void writeNotes(ZipOutputStream zos) throws IOException {
+		zos.setLevel(Deflater.DEFAULT_COMPRESSION);
+		zos.putNextEntry(new ZipEntry(NOTES_ENTRY));
+		// Closing the writer would close the whole archive
+		Writer writer = new OutputStreamWriter(zos, CHARSET);
+		long lastId = Long.MIN_VALUE;
+		List<Note> notes;
+		do {
+			notes = DbHelper.getInstance().getNotesAfter(lastId, NOTES_BATCH_SIZE);
+			for (Note note : notes) {
+				writer.write(note.toJSON());
+				writer.write('\n');
+				lastId = note.get_id();
+			}
+		} while (notes.size() == NOTES_BATCH_SIZE);
+		writer.flush();
+		zos.closeEntry();
+	}
+
+
+	/**
+	 * Attachments are mostly already compressed media, so they're written without compression
+	 */
+	private static boolean writeAttachments(ZipOutputStream zos, NotificationsHelper notificationsHelper) throws
+			IOException {
+		String attachmentsDirName = StorageHelper.getAttachmentDir().getName();
+		List<Attachment> list = DbHelper.getInstance().getAllAttachments();
+		boolean result = true;
+		Set<String> names = new HashSet<>();
+		int exported = 0;
+		int failed = 0;
+		for (Attachment attachment : list) {
+			// Files shared by many attachments are archived once
+			String name = FilenameUtils.getName(attachment.getUriPath());
+			if (!names.add(name)) {
+				notifyProgress(notificationsHelper, ++exported, list.size(), failed);
+				continue;
+			}
+			if (writeAttachment(zos, attachmentsDirName + "/" + name, attachment)) {
+				++exported;
+			} else {
+				++failed;
+				result = false;
+			}
+			notifyProgress(notificationsHelper, exported, list.size(), failed);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Local files are stored as they are, computing first the checksum required by stored entries. Other ones, whose
+	 * size is not known in advance, are deflated with no compression.
+	 *
+	 * @return False if attachment's file was not found
+	 */
+	private static boolean writeAttachment(ZipOutputStream zos, String entryName, Attachment attachment) throws
+			IOException {
+		Uri uri = attachment.getUri();
+		if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
+			File file = new File(uri.getPath());
+			if (!file.exists()) {
+				Log.w(Constants.TAG, "Attachment not found during backup: " + attachment.getUriPath());
+				return false;
+			}
+			ZipEntry entry = new ZipEntry(entryName);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(file.length());
+			entry.setCompressedSize(file.length());
+			entry.setCrc(getCrc(file));
+			writeEntry(zos, entry, new FileInputStream(file));
+			return true;
+		}
+		InputStream is;
+		try {
+			is = OmniNotes.getAppContext().getContentResolver().openInputStream(uri);
+		} catch (IOException e) {
+			Log.w(Constants.TAG, "Attachment not found during backup: " + attachment.getUriPath());
+			return false;
+		}
+		if (is == null) {
+			return false;
+		}
+		writeEntry(zos, entryName, is, Deflater.NO_COMPRESSION);
+		return true;
+	}
+
+
+	private static long getCrc(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		InputStream is = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				crc.update(buffer, 0, read);
+			}
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+		return crc.getValue();
+	}
+
+
+	private static void writeEntry(ZipOutputStream zos, String name, InputStream is, int level) throws IOException {
+		zos.setLevel(level);
+		writeEntry(zos, new ZipEntry(name), is);
+	}
+
+
+	private static void writeEntry(ZipOutputStream zos, ZipEntry entry, InputStream is) throws IOException {
+		try {
+			zos.putNextEntry(entry);
+			IOUtils.copyLarge(is, zos, new byte[BUFFER_SIZE]);
+			zos.closeEntry();
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+
+	/**
+	 * Imports notes, attachments and settings from an archive
+	 *
+	 * @return True if success, false otherwise
+	 */
+	public static boolean importArchive(File archive, NotificationsHelper notificationsHelper) {
+		File attachmentsDir = StorageHelper.getAttachmentDir();
+		File preferences = StorageHelper.getSharedPreferencesFile(OmniNotes.getAppContext());
+		String attachmentsEntryPrefix = attachmentsDir.getName() + "/";
+		ZipInputStream zis = null;
+		try {
+			zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(archive), BUFFER_SIZE));
+			int imported = 0;
+			for (ZipEntry entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry()) {
+				if (NOTES_ENTRY.equals(entry.getName())) {
+					readNotes(zis);
+				} else if (entry.getName().startsWith(attachmentsEntryPrefix)) {
+					// Only file name is used to avoid writing outside of attachments folder
+					readEntry(zis, new File(attachmentsDir, FilenameUtils.getName(entry.getName())));
+					notifyProgress(notificationsHelper, ++imported, 0, 0);
+				} else if (preferences.getName().equals(entry.getName())) {
+					readEntry(zis, preferences);
+				}
+				zis.closeEntry();
+			}
+			return true;
+		} catch (IOException e) {
+			Log.e(Constants.TAG, "Error reading backup archive " + archive.getName(), e);
+			return false;
+		} finally {
+			IOUtils.closeQuietly(zis);
+		}
+	}
+
+
+	private static void readNotes(ZipInputStream zis) throws IOException {
+		// Closing the reader would close the whole archive
+		BufferedReader reader = new BufferedReader(new InputStreamReader(zis, CHARSET));
+		for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+			if (!TextUtils.isEmpty(line)) {
+				BackupHelper.importNote(line);
+			}
+		}
+	}
+
+
+	private static void readEntry(ZipInputStream zis, File destination) throws IOException {
+		OutputStream os = null;
+		try {
+			os = new FileOutputStream(destination);
+			IOUtils.copyLarge(zis, os, new byte[BUFFER_SIZE]);
+		} finally {
+			IOUtils.closeQuietly(os);
+		}
+	}
+
+
+	/**
+	 * @param total Total number of items, 0 if unknown
+	 */
+	private static void notifyProgress(NotificationsHelper notificationsHelper, int done, int total, int failed) {
+		if (notificationsHelper != null) {
+			String failedString = failed > 0 ? " (" + failed + " " + OmniNotes.getAppContext().getString(R.string
+					.failed) + ")" : "";
+			notificationsHelper.updateMessage(
+					TextHelper.capitalize(OmniNotes.getAppContext().getString(R.string.attachment))
+							+ " " + done + (total > 0 ? "/" + total : "") + failedString
+			);
+		}
+	}
+
+}
@@ -1,6 +1,7 @@
 package it.feio.android.omninotes.helpers;
 
 
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.support.annotation.NonNull;
@@ -9,20 +10,33 @@ import android.util.Log;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.RegexFileFilter;
 import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.bitbucket.cowwoc.diffmatchpatch.DiffMatchPatch;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import it.feio.android.omninotes.OmniNotes;
 import it.feio.android.omninotes.R;
@@ -31,6 +45,7 @@ import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.models.Attachment;
 import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.utils.Constants;
+import it.feio.android.omninotes.utils.Security;
 import it.feio.android.omninotes.utils.StorageHelper;
 import it.feio.android.omninotes.utils.TextHelper;
 import it.feio.android.omninotes.utils.notifications.NotificationsHelper;
@@ -57,23 +72,53 @@ public class BackupHelper {
 
 	private static String TAG = BackupHelper.class.getSimpleName();
 
+	/**
+	 * Attachments copied at the same time, flash storage is used at full speed only with concurrent accesses
+	 */
+	public static final int DEFAULT_COPY_CONCURRENCY = 4;
+
+	private static final String CHARSET = "UTF-8";
+
 
 	public static void exportNotes(File backupDir) {
-		for (Note note : DbHelper.getInstance(true).getAllNotes(false)) {
+		for (Note note : DbHelper.getInstance().getAllNotes(false)) {
 			exportNote(backupDir, note);
 		}
 	}
 
 
-	public static void exportNote(File backupDir, Note note) {
-		File noteFile = getBackupNoteFile(backupDir, note);
+	public static boolean exportNote(File backupDir, Note note) {
+		return writeNote(backupDir, note, getNoteData(note));
+	}
+
+
+	private static boolean writeNote(File backupDir, Note note, byte[] noteData) {
 		try {
-			FileUtils.write(noteFile, note.toJSON());
+			FileUtils.writeByteArrayToFile(getBackupNoteFile(backupDir, note), noteData);
+			return true;
 		} catch (IOException e) {
 			Log.e(Constants.TAG, "Error backupping note: " + note.get_id());
+			return false;
+		}
+	}
+
+
+	/**
+	 * @return Content of the note file
+	 */
+	private static byte[] getNoteData(Note note) {
+		try {
+			return note.toJSON().getBytes(CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(CHARSET + " not supported", e);
 		}
 	}
 
+
+	private static String getHash(byte[] data) {
+		return Security.toHex(Security.getContentDigest().digest(data));
+	}
+
 	@NonNull
 	public static File getBackupNoteFile(File backupDir, Note note) {
 		return new File(backupDir, String.valueOf(note.get_id()) + ".json");
@@ -105,41 +150,247 @@ public class BackupHelper {
 
 	public static boolean exportAttachments(NotificationsHelper notificationsHelper, File destinationattachmentsDir,
 											List<Attachment> list, List<Attachment> listOld) {
+		return exportAttachments(notificationsHelper, destinationattachmentsDir, list, listOld,
+				DEFAULT_COPY_CONCURRENCY);
+	}
 
-		boolean result = true;
+
+	public static boolean exportAttachments(NotificationsHelper notificationsHelper, File destinationattachmentsDir,
+											List<Attachment> list, List<Attachment> listOld, int concurrency) {
 
 		listOld = listOld == null ? Collections.EMPTY_LIST : listOld;
-		int exported = 0;
-		int failed = 0;
+		destinationattachmentsDir.mkdirs();
+		// Files shared by many attachments are copied once
+		Set<String> names = new HashSet<>();
+		List<Callable<Boolean>> copies = new ArrayList<>();
 		for (Attachment attachment : list) {
-			try {
-				StorageHelper.copyToBackupDir(destinationattachmentsDir, FilenameUtils.getName(attachment.getUriPath()), OmniNotes.getAppContext().getContentResolver().openInputStream(attachment.getUri()));
-				++exported;
-			} catch (FileNotFoundException e) {
-				Log.w(Constants.TAG, "Attachment not found during backup: " + attachment.getUriPath());
-				++failed;
-				result = false;
-			}
-
-			String failedString = failed > 0 ? " (" + failed + " " + OmniNotes.getAppContext().getString(R.string.failed) + ")" : "";
-			if (notificationsHelper != null) {
-				notificationsHelper.updateMessage(
-						TextHelper.capitalize(OmniNotes.getAppContext().getString(R.string.attachment))
-								+ " " + exported + "/" + list.size() + failedString
-				);
+			String name = FilenameUtils.getName(attachment.getUriPath());
+			if (names.add(name)) {
+				File destination = new File(destinationattachmentsDir, name);
+				copies.add(() -> copyAttachment(attachment, destination, null) != null);
 			}
 		}
-		
+		List<Boolean> results = runInParallel(copies, concurrency, R.string.attachment, notificationsHelper);
+
 		Observable.from(listOld)
-				.filter(attachment -> !list.contains(attachment))
+				.filter(attachment -> !names.contains(FilenameUtils.getName(attachment.getUriPath())))
 				.forEach(attachment -> StorageHelper.delete(OmniNotes.getAppContext(), new File
 						(destinationattachmentsDir.getAbsolutePath(),
 								attachment.getUri().getLastPathSegment()).getAbsolutePath()));
 
+		return allSucceeded(results);
+	}
+
+
+	/**
+	 * @param results Results of {@link #runInParallel}, null for the tasks that threw
+	 */
+	private static boolean allSucceeded(List<Boolean> results) {
+		for (Boolean result : results) {
+			if (!Boolean.TRUE.equals(result)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Exports to backup folder only notes and attachments changed since its last export, as recorded by its
+	 * manifest, and removes from it the ones not existing anymore. Without a readable manifest the folder is emptied,
+	 * as files of notes deleted since they were exported couldn't be told apart, and everything is exported.
+	 *
+	 * @return True if success, false otherwise
+	 */
+	public static boolean exportIncremental(File backupDir, NotificationsHelper notificationsHelper) {
+		return exportIncremental(backupDir, notificationsHelper, DEFAULT_COPY_CONCURRENCY);
+	}
+
+
+	public static boolean exportIncremental(File backupDir, NotificationsHelper notificationsHelper, int
+			concurrency) {
+		BackupManifest oldManifest = BackupManifest.read(backupDir);
+		if (oldManifest == null) {
+			try {
+				FileUtils.cleanDirectory(backupDir);
+			} catch (IOException e) {
+				Log.e(Constants.TAG, "Error cleaning backup folder without manifest", e);
+				return false;
+			}
+			oldManifest = new BackupManifest();
+		}
+		BackupManifest manifest = new BackupManifest();
+		boolean result = exportChangedNotes(backupDir, oldManifest, manifest);
+		result &= exportChangedAttachments(backupDir, oldManifest, manifest, notificationsHelper, concurrency);
+		return manifest.write(backupDir) && result;
+	}
+
+
+	/**
+	 * Every note is serialized and hashed, but only the changed ones are written
+	 */
+	private static boolean exportChangedNotes(File backupDir, BackupManifest oldManifest, BackupManifest manifest) {
+		boolean result = true;
+		for (Note note : DbHelper.getInstance().getAllNotes(false)) {
+			byte[] noteData = getNoteData(note);
+			String hash = getHash(noteData);
+			if ((!oldManifest.isNoteChanged(note, hash) && getBackupNoteFile(backupDir, note).exists())
+					|| writeNote(backupDir, note, noteData)) {
+				manifest.putNote(note.get_id(), new BackupManifest.NoteEntry(note.getLastModification(), hash));
+			} else {
+				result = false;
+			}
+		}
+		for (Long removedNoteId : oldManifest.getNotes()) {
+			if (manifest.getNote(removedNoteId) == null) {
+				new File(backupDir, removedNoteId + ".json").delete();
+			}
+		}
 		return result;
 	}
 
 
+	/**
+	 * Attachments files are copied again only if missing or of a different size, hashing them while copying. Size is
+	 * enough to spot changes since files are never rewritten once added: the ones stored by content are named after
+	 * their hash, so different data always means a different name. Hashing sources here would read every attachment
+	 * at each export, backup copies are verified against the recorded hashes by {@link #integrityCheck(File)}.
+	 */
+	private static boolean exportChangedAttachments(File backupDir, BackupManifest oldManifest, BackupManifest
+			manifest, NotificationsHelper notificationsHelper, int concurrency) {
+		File destinationAttachmentsDir = new File(backupDir, StorageHelper.getAttachmentDir().getName());
+		destinationAttachmentsDir.mkdirs();
+		Set<String> names = new HashSet<>();
+		List<String> copiedNames = new ArrayList<>();
+		List<Callable<BackupManifest.AttachmentEntry>> copies = new ArrayList<>();
+		for (Attachment attachment : DbHelper.getInstance().getAllAttachments()) {
+			String name = FilenameUtils.getName(attachment.getUriPath());
+			// Files shared by many attachments are exported once
+			if (!names.add(name)) {
+				continue;
+			}
+			File source = new File(attachment.getUri().getPath());
+			File destination = new File(destinationAttachmentsDir, name);
+			BackupManifest.AttachmentEntry entry = oldManifest.getAttachment(name);
+			if (entry != null && entry.size == source.length() && destination.length() == entry.size) {
+				manifest.putAttachment(name, entry);
+			} else {
+				copiedNames.add(name);
+				copies.add(() -> copyAttachment(attachment, destination, Security.getContentDigest()));
+			}
+		}
+
+		List<BackupManifest.AttachmentEntry> entries = runInParallel(copies, concurrency, R.string.attachment,
+				notificationsHelper);
+		boolean result = true;
+		for (int i = 0; i < entries.size(); i++) {
+			if (entries.get(i) != null) {
+				manifest.putAttachment(copiedNames.get(i), entries.get(i));
+			} else {
+				result = false;
+			}
+		}
+
+		for (String removedAttachment : oldManifest.getAttachments()) {
+			if (manifest.getAttachment(removedAttachment) == null) {
+				new File(destinationAttachmentsDir, removedAttachment).delete();
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Copies attachment file, through channels when it's a local file
+	 *
+	 * @param digest Digest to compute on copied data, can be null
+	 * @return Manifest entry of the copied attachment, without hash if not computed, null if copy failed
+	 */
+	private static BackupManifest.AttachmentEntry copyAttachment(Attachment attachment, File destination,
+																 MessageDigest digest) {
+		InputStream is = null;
+		try {
+			if (ContentResolver.SCHEME_FILE.equals(attachment.getUri().getScheme())) {
+				StorageHelper.copyFileChannel(new File(attachment.getUri().getPath()), destination, digest);
+			} else {
+				is = OmniNotes.getAppContext().getContentResolver().openInputStream(attachment.getUri());
+				if (digest != null) {
+					is = new DigestInputStream(is, digest);
+				}
+				FileUtils.copyInputStreamToFile(is, destination);
+			}
+			return new BackupManifest.AttachmentEntry(destination.length(), digest != null ? Security.toHex
+					(digest.digest()) : null);
+		} catch (IOException e) {
+			Log.w(Constants.TAG, "Attachment not copied during backup: " + attachment.getUriPath(), e);
+			return null;
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+
+	/**
+	 * Runs tasks, like copies, on at most the passed number of threads. Progress of all of them is notified as
+	 * each one completes, always from the calling thread.
+	 *
+	 * @param itemName Resource of the name of processed items shown in progress notification
+	 * @return Results of the tasks in the same order they're passed, null for the ones that threw. These and the
+	 * ones returning false are counted as failed in progress notification.
+	 */
+	static <T> List<T> runInParallel(List<Callable<T>> tasks, int concurrency, int itemName,
+									 NotificationsHelper notificationsHelper) {
+		List<T> results = new ArrayList<>(Collections.<T>nCopies(tasks.size(), null));
+		if (tasks.isEmpty()) {
+			return results;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, tasks.size())));
+		CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+		Map<Future<T>, Integer> positions = new HashMap<>();
+		try {
+			for (int i = 0; i < tasks.size(); i++) {
+				positions.put(completionService.submit(tasks.get(i)), i);
+			}
+			int completed = 0;
+			int failed = 0;
+			for (int i = 0; i < tasks.size(); i++) {
+				Future<T> future = completionService.take();
+				T result = getResult(future);
+				results.set(positions.get(future), result);
+				if (result != null && !Boolean.FALSE.equals(result)) {
+					++completed;
+				} else {
+					++failed;
+				}
+				if (notificationsHelper != null) {
+					String failedString = failed > 0 ? " (" + failed + " " + OmniNotes.getAppContext().getString(R
+							.string.failed) + ")" : "";
+					notificationsHelper.updateMessage(
+							TextHelper.capitalize(OmniNotes.getAppContext().getString(itemName))
+									+ " " + completed + "/" + tasks.size() + failedString
+					);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			Log.w(Constants.TAG, "Backup tasks interrupted", e);
+		} finally {
+			executor.shutdownNow();
+		}
+		return results;
+	}
+
+
+	private static <T> T getResult(Future<T> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Log.e(Constants.TAG, "Error running backup task", e.getCause());
+			return null;
+		}
+	}
+
+
 	/**
 	 * Imports backuped notes
 	 *
@@ -158,7 +409,19 @@ public class BackupHelper {
 	 * Imports single note from its file
 	 */
 	public static Note importNote(File file) {
-		Note note = getImportNote(file);
+		return importNote(getImportNote(file));
+	}
+
+
+	/**
+	 * Imports single note from its json representation
+	 */
+	public static Note importNote(String jsonNote) {
+		return importNote(getImportNote(jsonNote));
+	}
+
+
+	private static Note importNote(Note note) {
 		if (note.getCategory() != null) {
 			DbHelper.getInstance().updateCategory(note.getCategory());
 		}
@@ -173,13 +436,7 @@ public class BackupHelper {
 	 */
 	public static Note getImportNote(File file) {
 		try {
-			Note note = new Note();
-			String jsonString = FileUtils.readFileToString(file);
-			if (!TextUtils.isEmpty(jsonString)) {
-				note.buildFromJson(jsonString);
-				note.setAttachmentsListOld(DbHelper.getInstance().getNoteAttachments(note));
-			}
-			return note;
+			return getImportNote(FileUtils.readFileToString(file));
 		} catch (IOException e) {
 			Log.e(Constants.TAG, "Error parsing note json");
 			return new Note();
@@ -187,6 +444,16 @@ public class BackupHelper {
 	}
 
 
+	private static Note getImportNote(String jsonString) {
+		Note note = new Note();
+		if (!TextUtils.isEmpty(jsonString)) {
+			note.buildFromJson(jsonString);
+			note.setAttachmentsListOld(DbHelper.getInstance().getNoteAttachments(note));
+		}
+		return note;
+	}
+
+
 	/**
 	 * Import attachments from backup folder
 	 */
@@ -199,31 +466,37 @@ public class BackupHelper {
 	 * Import attachments from backup folder notifying for each imported item
 	 */
 	public static boolean importAttachments(File backupDir, NotificationsHelper notificationsHelper) {
+		return importAttachments(backupDir, notificationsHelper, DEFAULT_COPY_CONCURRENCY);
+	}
+
+
+	/**
+	 * Import attachments from backup folder copying many of them at the same time
+	 */
+	public static boolean importAttachments(File backupDir, NotificationsHelper notificationsHelper, int
+			concurrency) {
 		File attachmentsDir = StorageHelper.getAttachmentDir();
 		File backupAttachmentsDir = new File(backupDir, attachmentsDir.getName());
 		if (!backupAttachmentsDir.exists()) return true;
-		boolean result = true;
-		Collection list = FileUtils.listFiles(backupAttachmentsDir, FileFilterUtils.trueFileFilter(),
-				TrueFileFilter.INSTANCE);
-		Iterator i = list.iterator();
-		int imported = 0;
-		File file = null;
-		while (i.hasNext()) {
-			try {
-				file = (File) i.next();
-				FileUtils.copyFileToDirectory(file, attachmentsDir, true);
-				if (notificationsHelper != null) {
-					notificationsHelper.updateMessage(
-							TextHelper.capitalize(OmniNotes.getAppContext().getString(R.string.attachment))
-									+ " " + imported++ + "/" + list.size()
-					);
-				}
-			} catch (IOException e) {
-				result = false;
-				Log.e(Constants.TAG, "Error importing the attachment " + file.getName());
-			}
+		List<Callable<Boolean>> copies = new ArrayList<>();
+		for (File file : FileUtils.listFiles(backupAttachmentsDir, FileFilterUtils.trueFileFilter(),
+				TrueFileFilter.INSTANCE)) {
+			copies.add(() -> importAttachment(file, attachmentsDir));
+		}
+		return allSucceeded(runInParallel(copies, concurrency, R.string.attachment, notificationsHelper));
+	}
+
+
+	private static boolean importAttachment(File file, File attachmentsDir) {
+		File destination = new File(attachmentsDir, file.getName());
+		try {
+			StorageHelper.copyFileChannel(file, destination, null);
+			destination.setLastModified(file.lastModified());
+			return true;
+		} catch (IOException e) {
+			Log.e(Constants.TAG, "Error importing the attachment " + file.getName());
+			return false;
 		}
-		return result;
 	}
 
 
@@ -251,9 +524,21 @@ public class BackupHelper {
 	 * @param backupFolderName subfolder of the app's external sd folder where notes will be stored
 	 */
 	public static void startBackupService(String backupFolderName) {
+		startBackupService(backupFolderName, false);
+	}
+
+
+	/**
+	 * Starts backup service
+	 * @param backupName name of the backup in the app's external sd folder
+	 * @param singleFile true to write a single archive file instead of a folder
+	 */
+	public static void startBackupService(String backupName, boolean singleFile) {
 		Intent service = new Intent(OmniNotes.getAppContext(), DataBackupIntentService.class);
 		service.setAction(DataBackupIntentService.ACTION_DATA_EXPORT);
-		service.putExtra(DataBackupIntentService.INTENT_BACKUP_NAME, backupFolderName);
+		service.putExtra(DataBackupIntentService.INTENT_BACKUP_NAME, backupName);
+		service.putExtra(DataBackupIntentService.INTENT_BACKUP_INCREMENTAL, true);
+		service.putExtra(DataBackupIntentService.INTENT_BACKUP_ARCHIVE, singleFile);
 		OmniNotes.getAppContext().startService(service);
 	}
 
@@ -308,44 +593,128 @@ public class BackupHelper {
 	@Deprecated
 	public static boolean importDB(Context context, File backupDir) {
 		File database = context.getDatabasePath(Constants.DATABASE_NAME);
-		if (database.exists()) {
-			database.delete();
-		}
+		// Shared connection must be released and write-ahead log removed together with the replaced file
+		DbHelper.closeDatabase();
+		context.deleteDatabase(Constants.DATABASE_NAME);
 		return (StorageHelper.copyFile(new File(backupDir, Constants.DATABASE_NAME), database));
 	}
 
 
-	public static List<LinkedList<DiffMatchPatch.Diff>> integrityCheck(File backupDir) {
-		List<LinkedList<DiffMatchPatch.Diff>> errors = new ArrayList<>();
-		for (Note note : DbHelper.getInstance(true).getAllNotes(false)) {
-			File noteFile = getBackupNoteFile(backupDir, note);
-			try {
-				String noteString = note.toJSON();
-				String noteFileString = FileUtils.readFileToString(noteFile);
-				if (noteString.equals(noteFileString)) {
-					File backupAttachmentsDir = new File(backupDir, StorageHelper.getAttachmentDir().getName());
-					for (Attachment attachment : note.getAttachmentsList()) {
-						if (!new File(backupAttachmentsDir, FilenameUtils.getName(attachment.getUriPath())).exists()) {
-							addIntegrityCheckError(errors, new FileNotFoundException("Attachment " + attachment
-									.getUriPath() + " missing"));
-						}
-					}
-				} else {
-					errors.add(new DiffMatchPatch().diffMain(noteString, noteFileString));
-				}
-			} catch (IOException e) {
-				Log.e(TAG, e.getMessage(), e);
-				addIntegrityCheckError(errors, e);
+	/**
+	 * Verifies backup folder against current notes and attachments. Notes must be exported with their current
+	 * content and files are streamed through a digest, many at the same time, to be compared with the ones
+	 * written in the manifest on export. Notes differences are not computed here, see
+	 * {@link #getNoteDiff(File, Note)}.
+	 */
+	public static IntegrityCheckResult integrityCheck(File backupDir) {
+		return integrityCheck(backupDir, DEFAULT_COPY_CONCURRENCY);
+	}
+
+
+	public static IntegrityCheckResult integrityCheck(File backupDir, int concurrency) {
+		BackupManifest readManifest = BackupManifest.read(backupDir);
+		// Without manifest nothing can be verified, so everything is reported
+		BackupManifest manifest = readManifest != null ? readManifest : new BackupManifest();
+		IntegrityCheckResult result = new IntegrityCheckResult();
+
+		List<Long> checkedNotes = new ArrayList<>();
+		List<Callable<Boolean>> notesChecks = new ArrayList<>();
+		for (Note note : DbHelper.getInstance().getAllNotes(false)) {
+			String hash = getHash(getNoteData(note));
+			if (manifest.isNoteChanged(note, hash)) {
+				result.mismatchingNotes.add(note.get_id());
+			} else {
+				File noteFile = getBackupNoteFile(backupDir, note);
+				checkedNotes.add(note.get_id());
+				notesChecks.add(() -> isFileIntact(noteFile, -1, hash));
+			}
+		}
+		List<Boolean> notesResults = runInParallel(notesChecks, concurrency, R.string.note, null);
+		for (int i = 0; i < notesResults.size(); i++) {
+			if (!Boolean.TRUE.equals(notesResults.get(i))) {
+				result.mismatchingNotes.add(checkedNotes.get(i));
+			}
+		}
+
+		File backupAttachmentsDir = new File(backupDir, StorageHelper.getAttachmentDir().getName());
+		Set<String> names = new HashSet<>();
+		List<String> checkedAttachments = new ArrayList<>();
+		List<Callable<Boolean>> attachmentsChecks = new ArrayList<>();
+		for (Attachment attachment : DbHelper.getInstance().getAllAttachments()) {
+			String name = FilenameUtils.getName(attachment.getUriPath());
+			if (!names.add(name)) {
+				continue;
+			}
+			BackupManifest.AttachmentEntry entry = manifest.getAttachment(name);
+			if (entry == null || entry.hash == null) {
+				result.corruptAttachments.add(name);
+			} else {
+				checkedAttachments.add(name);
+				attachmentsChecks.add(() -> isFileIntact(new File(backupAttachmentsDir, name), entry.size, entry
+						.hash));
+			}
+		}
+		List<Boolean> attachmentsResults = runInParallel(attachmentsChecks, concurrency, R.string.attachment, null);
+		for (int i = 0; i < attachmentsResults.size(); i++) {
+			if (!Boolean.TRUE.equals(attachmentsResults.get(i))) {
+				result.corruptAttachments.add(checkedAttachments.get(i));
 			}
 		}
-		return errors;
+		return result;
+	}
+
+
+	/**
+	 * Truncated files are detected by size, when known, without reading them
+	 *
+	 * @param size Expected size, negative if not known
+	 */
+	private static boolean isFileIntact(File file, long size, String hash) throws IOException {
+		if (!file.exists() || (size >= 0 && file.length() != size)) {
+			return false;
+		}
+		return hash.equals(StorageHelper.getContentHash(file));
+	}
+
+
+	/**
+	 * Computes differences between a note and its backup file. Quadratic on long notes, so it's meant to be run
+	 * on demand on the ones reported by {@link #integrityCheck(File)}.
+	 */
+	public static LinkedList<DiffMatchPatch.Diff> getNoteDiff(File backupDir, Note note) throws IOException {
+		String noteFileString = FileUtils.readFileToString(getBackupNoteFile(backupDir, note), CHARSET);
+		return new DiffMatchPatch().diffMain(note.toJSON(), noteFileString);
 	}
 
 
-	private static void addIntegrityCheckError(List<LinkedList<DiffMatchPatch.Diff>> errors, IOException e) {
-		LinkedList l = new LinkedList();
-		l.add(new DiffMatchPatch.Diff(DiffMatchPatch.Operation.DELETE, e.getMessage()));
-		errors.add(l);
+	/**
+	 * Outcome of a backup integrity check
+	 */
+	public static class IntegrityCheckResult {
+
+		private final List<Long> mismatchingNotes = new ArrayList<>();
+		private final List<String> corruptAttachments = new ArrayList<>();
+
+
+		/**
+		 * @return Ids of the notes whose backup file is missing, outdated or corrupt
+		 */
+		public List<Long> getMismatchingNotes() {
+			return mismatchingNotes;
+		}
+
+
+		/**
+		 * @return Names of the attachments files missing, truncated or corrupt in backup
+		 */
+		public List<String> getCorruptAttachments() {
+			return corruptAttachments;
+		}
+
+
+		public boolean isOk() {
+			return mismatchingNotes.isEmpty() && corruptAttachments.isEmpty();
+		}
 	}
 
 
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2013-2019 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.helpers;
+
+import android.util.Log;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.utils.Constants;
+
+
+/**
+ * State of a backup folder as of its last export: last modification and hash of each note file and size and hash
+ * of each attachment file. Comparing it with current data tells what must be exported again, comparing it with
+ * backup files tells if they've been corrupted.
+ */
+class BackupManifest {
+
+	static final String MANIFEST_FILE_NAME = "manifest.json";
+
+	private static final String KEY_NOTES = "notes";
+	private static final String KEY_ATTACHMENTS = "attachments";
+	private static final String KEY_LAST_MODIFICATION = "lastModification";
+	private static final String KEY_SIZE = "size";
+	private static final String KEY_HASH = "hash";
+
+	private final Map<Long, NoteEntry> notes = new HashMap<>();
+	private final Map<String, AttachmentEntry> attachments = new HashMap<>();
+
+
+	/**
+	 * Reads the manifest of a backup folder
+	 *
+	 * @return Read manifest, null if missing or not readable
+	 */
+	static BackupManifest read(File backupDir) {
+		BackupManifest manifest = new BackupManifest();
+		File manifestFile = new File(backupDir, MANIFEST_FILE_NAME);
+		if (!manifestFile.exists()) {
+			return null;
+		}
+		try {
+			JSONObject json = new JSONObject(FileUtils.readFileToString(manifestFile));
+			JSONObject notesJson = json.getJSONObject(KEY_NOTES);
+			for (Iterator<String> i = notesJson.keys(); i.hasNext(); ) {
+				String id = i.next();
+				JSONObject noteJson = notesJson.getJSONObject(id);
+				manifest.notes.put(Long.valueOf(id), new NoteEntry(noteJson.getLong(KEY_LAST_MODIFICATION),
+						noteJson.getString(KEY_HASH)));
+			}
+			JSONObject attachmentsJson = json.getJSONObject(KEY_ATTACHMENTS);
+			for (Iterator<String> i = attachmentsJson.keys(); i.hasNext(); ) {
+				String name = i.next();
+				JSONObject attachmentJson = attachmentsJson.getJSONObject(name);
+				manifest.attachments.put(name, new AttachmentEntry(attachmentJson.getLong(KEY_SIZE),
+						attachmentJson.getString(KEY_HASH)));
+			}
+		} catch (IOException | JSONException | NumberFormatException e) {
+			Log.w(Constants.TAG, "Backup manifest not readable", e);
+			return null;
+		}
+		return manifest;
+	}
+
+
+	/**
+	 * Writes the manifest replacing the previous one only once completely written
+	 */
+	boolean write(File backupDir) {
+		try {
+			JSONObject notesJson = new JSONObject();
+			for (Map.Entry<Long, NoteEntry> note : notes.entrySet()) {
+				notesJson.put(String.valueOf(note.getKey()), new JSONObject()
+						.put(KEY_LAST_MODIFICATION, note.getValue().lastModification)
+						.put(KEY_HASH, note.getValue().hash));
+			}
+			JSONObject attachmentsJson = new JSONObject();
+			for (Map.Entry<String, AttachmentEntry> attachment : attachments.entrySet()) {
+				attachmentsJson.put(attachment.getKey(), new JSONObject()
+						.put(KEY_SIZE, attachment.getValue().size)
+						.put(KEY_HASH, attachment.getValue().hash));
+			}
+			JSONObject json = new JSONObject().put(KEY_NOTES, notesJson).put(KEY_ATTACHMENTS, attachmentsJson);
+			File tmpFile = new File(backupDir, MANIFEST_FILE_NAME + ".tmp");
+			FileUtils.write(tmpFile, json.toString());
+			return tmpFile.renameTo(new File(backupDir, MANIFEST_FILE_NAME));
+		} catch (IOException | JSONException e) {
+			Log.e(Constants.TAG, "Error writing backup manifest", e);
+			return false;
+		}
+	}
+
+
+	/**
+	 * Notes are compared by the hash of their serialized content: many writes, like archiving, categorizing or
+	 * firing reminders, don't update last modification
+	 *
+	 * @param hash Hash of the note file as it would be written now
+	 * @return True if note has changed since last export or its hash is not known
+	 */
+	boolean isNoteChanged(Note note, String hash) {
+		NoteEntry entry = notes.get(note.get_id());
+		return entry == null || !hash.equals(entry.hash);
+	}
+
+
+	NoteEntry getNote(Long id) {
+		return notes.get(id);
+	}
+
+
+	void putNote(Long id, NoteEntry entry) {
+		notes.put(id, entry);
+	}
+
+
+	Set<Long> getNotes() {
+		return notes.keySet();
+	}
+
+
+	AttachmentEntry getAttachment(String name) {
+		return attachments.get(name);
+	}
+
+
+	void putAttachment(String name, AttachmentEntry entry) {
+		attachments.put(name, entry);
+	}
+
+
+	Set<String> getAttachments() {
+		return attachments.keySet();
+	}
+
+
+	static class NoteEntry {
+
+		final long lastModification;
+		final String hash;
+
+
+		NoteEntry(long lastModification, String hash) {
+			this.lastModification = lastModification;
+			this.hash = hash;
+		}
+	}
+
+
+	static class AttachmentEntry {
+
+		final long size;
+		final String hash;
+
+
+		AttachmentEntry(long size, String hash) {
+			this.size = size;
+			this.hash = hash;
+		}
+	}
+
+}
@@ -40,7 +40,6 @@ import it.feio.android.omninotes.models.Category;
 import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.utils.Constants;
 import it.feio.android.omninotes.utils.GeocodeHelper;
-import it.feio.android.omninotes.utils.ReminderHelper;
 import it.feio.android.omninotes.utils.StorageHelper;
 import it.feio.android.omninotes.utils.notifications.NotificationChannels;
 import it.feio.android.omninotes.utils.notifications.NotificationsHelper;
@@ -296,7 +295,6 @@ public class SpringImportHelper {
 
 			// The note is saved
 			DbHelper.getInstance().updateNote(note, false);
-			ReminderHelper.addReminder(context, note);
 
 			// Updating notification
 			importedSpringpadNotes++;
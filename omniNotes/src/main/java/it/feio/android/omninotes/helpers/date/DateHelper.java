@@ -20,15 +20,12 @@ import android.content.Context;
 import android.text.TextUtils;
 import android.text.format.DateUtils;
 import android.text.format.Time;
-import android.util.Log;
 import be.billington.calendar.recurrencepicker.EventRecurrence;
 import be.billington.calendar.recurrencepicker.EventRecurrenceFormatter;
 import it.feio.android.omninotes.OmniNotes;
 import it.feio.android.omninotes.R;
 import it.feio.android.omninotes.utils.Constants;
-import net.fortuna.ical4j.model.property.RRule;
 
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
@@ -158,21 +155,7 @@ public class DateHelper {
 
 
     public static Long nextReminderFromRecurrenceRule(long reminder, long currentTime, String recurrenceRule) {
-        RRule rule = new RRule();
-        try {
-            rule.setValue(recurrenceRule);
-            net.fortuna.ical4j.model.DateTime seed = new net.fortuna.ical4j.model.DateTime(reminder);
-            long startTimestamp = reminder + 60 * 1000;
-            if (startTimestamp < currentTime) {
-                startTimestamp = currentTime;
-            }
-            net.fortuna.ical4j.model.DateTime start = new net.fortuna.ical4j.model.DateTime(startTimestamp);
-            Date nextDate = rule.getRecur().getNextDate(seed, start);
-            return nextDate == null ? 0L : nextDate.getTime();
-        } catch (ParseException e) {
-            Log.e(Constants.TAG, "Error parsing rrule");
-        }
-        return 0L;
+        return RecurrenceHelper.nextOccurrence(reminder, currentTime, recurrenceRule);
     }
 
 
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2013-2019 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.helpers.date;
+
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+import it.feio.android.omninotes.models.Note;
+import it.feio.android.omninotes.utils.Constants;
+import net.fortuna.ical4j.model.DateTime;
+import net.fortuna.ical4j.model.Recur;
+import net.fortuna.ical4j.model.parameter.Value;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+
+/**
+ * Expands recurrent reminders. Rules are parsed once and kept by their string, since few distinct rules are
+ * shared by many notes and parsed rules are only read when computing dates.
+ */
+public class RecurrenceHelper {
+
+    private static final int RULES_CACHE_SIZE = 32;
+    private static final long RECURRENCE_MIN_INTERVAL = 60 * 1000;
+
+    private static final LruCache<String, Recur> rules = new LruCache<>(RULES_CACHE_SIZE);
+
+
+    /**
+     * Retrieves the parsed recurrence rule
+     *
+     * @return Parsed rule or null if not valid
+     */
+    public static Recur getRecur(String recurrenceRule) {
+        if (TextUtils.isEmpty(recurrenceRule)) {
+            return null;
+        }
+        Recur recur = rules.get(recurrenceRule);
+        if (recur == null) {
+            try {
+                recur = new Recur(recurrenceRule);
+                rules.put(recurrenceRule, recur);
+            } catch (ParseException e) {
+                Log.e(Constants.TAG, "Error parsing rrule " + recurrenceRule);
+            }
+        }
+        return recur;
+    }
+
+
+    /**
+     * Computes next occurrence of a recurrent reminder after the current one and the current time
+     *
+     * @return Next occurrence or 0 if recurrence is over
+     */
+    public static long nextOccurrence(long reminder, long currentTime, String recurrenceRule) {
+        Recur recur = getRecur(recurrenceRule);
+        if (recur == null) {
+            return 0L;
+        }
+        long startTimestamp = Math.max(reminder + RECURRENCE_MIN_INTERVAL, currentTime);
+        Date nextDate = recur.getNextDate(new DateTime(reminder), new DateTime(startTimestamp));
+        return nextDate == null ? 0L : nextDate.getTime();
+    }
+
+
+    /**
+     * Computes the occurrences of a reminder, recurrent or not, falling between the passed dates (both included)
+     */
+    public static List<Long> getOccurrences(long reminder, String recurrenceRule, long from, long to) {
+        TreeSet<Long> occurrences = new TreeSet<>();
+        if (reminder >= from && reminder <= to) {
+            occurrences.add(reminder);
+        }
+        Recur recur = getRecur(recurrenceRule);
+        if (recur != null && reminder <= to) {
+            DateTime seed = new DateTime(reminder);
+            DateTime periodStart = new DateTime(Math.max(reminder, from));
+            DateTime periodEnd = new DateTime(to);
+            for (Object date : recur.getDates(seed, periodStart, periodEnd, Value.DATE_TIME)) {
+                long occurrence = ((Date) date).getTime();
+                // Reminder itself is already counted, rule could also give it back with truncated precision
+                if (occurrence > reminder && occurrence >= from && occurrence <= to) {
+                    occurrences.add(occurrence);
+                }
+            }
+        }
+        return new ArrayList<>(occurrences);
+    }
+
+
+    /**
+     * Computes the occurrences of many notes reminders in the passed window, each distinct rule is parsed once.
+     *
+     * @return Occurrences by note id, in the same order of the notes and only for the ones occurring in the window
+     */
+    public static Map<Long, List<Long>> getOccurrences(List<Note> notes, long from, long to) {
+        Map<Long, List<Long>> occurrences = new LinkedHashMap<>();
+        for (Note note : notes) {
+            if (note.getAlarm() == null) {
+                continue;
+            }
+            List<Long> noteOccurrences = getOccurrences(Long.parseLong(note.getAlarm()), note.getRecurrenceRule(),
+                    from, to);
+            if (!noteOccurrences.isEmpty()) {
+                occurrences.put(note.get_id(), Collections.unmodifiableList(noteOccurrences));
+            }
+        }
+        return occurrences;
+    }
+
+}
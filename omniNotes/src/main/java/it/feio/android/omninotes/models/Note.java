@@ -117,6 +117,20 @@ public class Note extends BaseNote implements Parcelable {
 		setAttachmentsList(attachmentsList);
 	}
 
+    /**
+     * Content to be shown in lists
+     */
+    public String getContentPreview() {
+        return getContent();
+    }
+
+    /**
+     * Attachment to be shown in lists as thumbnail
+     */
+    public Attachment getFirstAttachment() {
+        return getAttachmentsList().isEmpty() ? null : getAttachmentsList().get(0);
+    }
+
     public List<Attachment> getAttachmentsListOld() {
         return (List<Attachment>) super.getAttachmentsListOld();
     }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2013-2019 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.feio.android.omninotes.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it.feio.android.omninotes.db.DbHelper;
+
+
+/**
+ * Note retrieved by lists and widgets with a lightweight projection: it only carries a preview of the content (empty
+ * for locked notes) and the first attachment. Previews never trigger a load, so summaries are safe to bind on the UI
+ * thread. Whole content and attachments are loaded from database the first time they're requested, so a summary can
+ * be used wherever a complete note is expected.
+ */
+public class NoteSummary extends Note {
+
+    private String contentPreview;
+    private Attachment firstAttachment;
+    private boolean loaded;
+
+
+    public NoteSummary() {
+        super();
+    }
+
+
+    @Override
+    public String getContentPreview() {
+        if (loaded && !isLocked()) {
+            return super.getContentPreview();
+        }
+        return contentPreview != null ? contentPreview : "";
+    }
+
+
+    public void setContentPreview(String contentPreview) {
+        this.contentPreview = contentPreview;
+    }
+
+
+    @Override
+    public Attachment getFirstAttachment() {
+        return loaded ? super.getFirstAttachment() : firstAttachment;
+    }
+
+
+    public void setFirstAttachment(Attachment firstAttachment) {
+        this.firstAttachment = firstAttachment;
+    }
+
+
+    @Override
+    public String getContent() {
+        load();
+        return super.getContent();
+    }
+
+
+    @Override
+    public void setContent(String content) {
+        load();
+        super.setContent(content);
+    }
+
+
+    @Override
+    public List<Attachment> getAttachmentsList() {
+        load();
+        return super.getAttachmentsList();
+    }
+
+
+    @Override
+    public void setAttachmentsList(ArrayList<Attachment> attachmentsList) {
+        load();
+        super.setAttachmentsList(attachmentsList);
+    }
+
+
+    /**
+     * Loads whole note's content and attachments, once note has been saved
+     */
+    private synchronized void load() {
+        if (loaded || get_id() == null) {
+            return;
+        }
+        loaded = true;
+        Note note = DbHelper.getInstance().getNote(get_id());
+        if (note != null) {
+            super.setContent(note.getContent());
+            super.setAttachmentsList(new ArrayList<>(note.getAttachmentsList()));
+        } else {
+            super.setContent(contentPreview);
+        }
+    }
+}
@@ -41,6 +41,9 @@ import java.util.concurrent.RejectedExecutionException;
 
 import it.feio.android.omninotes.R;
 import it.feio.android.omninotes.async.TextWorkerTask;
+import it.feio.android.omninotes.async.notes.NotesPageLoaderTask;
+import it.feio.android.omninotes.db.NotesPage;
+import it.feio.android.omninotes.models.listeners.OnNotesPageLoaded;
 import it.feio.android.omninotes.models.Attachment;
 import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.models.holders.NoteViewHolder;
@@ -55,6 +58,9 @@ import static com.bumptech.glide.load.resource.drawable.DrawableTransitionOption
 
 public class NoteAdapter extends ArrayAdapter<Note> implements Insertable {
 
+    // Distance from the last loaded note at which the following page starts being retrieved
+    private static final int PAGE_PREFETCH_DISTANCE = 10;
+
     private final Activity mActivity;
     private final int navigation;
     private List<Note> notes = new ArrayList<>();
@@ -64,6 +70,8 @@ public class NoteAdapter extends ArrayAdapter<Note> implements Insertable {
     private LayoutInflater inflater;
     private long closestNoteReminder = Long.parseLong(Constants.TIMESTAMP_UNIX_EPOCH_FAR);
     private int closestNotePosition;
+    private NotesPage notesPage;
+    private boolean pageLoading;
 
 
     public NoteAdapter(Activity activity, int layout, List<Note> notes) {
@@ -95,10 +103,59 @@ public class NoteAdapter extends ArrayAdapter<Note> implements Insertable {
         initDates(note, holder);
         initThumbnail(note, holder);
         manageSelectionColor(position, note, holder);
+        loadNextPage(position);
         return convertView;
     }
 
 
+    /**
+     * Sets pagination state used to retrieve further notes while list is scrolled
+     */
+    public void setNotesPage(NotesPage notesPage) {
+        this.notesPage = notesPage;
+    }
+
+
+    /**
+     * Starts retrieving the following page when scrolling gets close to the last loaded note
+     */
+    private void loadNextPage(int position) {
+        if (notesPage != null && !notesPage.isCompleted() && !pageLoading
+                && position >= notes.size() - PAGE_PREFETCH_DISTANCE) {
+            pageLoading = true;
+            final NotesPage loadingNotesPage = notesPage;
+            // Pages are retrieved one after the other since each of them moves the same pagination state
+            new NotesPageLoaderTask(loadingNotesPage, pageNotes -> {
+                pageLoading = false;
+                // Pages loaded for a replaced pagination are discarded
+                if (loadingNotesPage == notesPage) {
+                    addAll(pageNotes);
+                }
+            }).executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
+        }
+    }
+
+
+    /**
+     * Retrieves all the notes not loaded yet, after an eventual page being retrieved, and adds them to the list
+     *
+     * @param mOnNotesPageLoaded Notified when the whole list is loaded
+     */
+    public void loadAllPages(OnNotesPageLoaded mOnNotesPageLoaded) {
+        if (notesPage == null || notesPage.isCompleted()) {
+            mOnNotesPageLoaded.onNotesPageLoaded(new ArrayList<>());
+            return;
+        }
+        final NotesPage loadingNotesPage = notesPage;
+        new NotesPageLoaderTask(loadingNotesPage, true, pageNotes -> {
+            if (loadingNotesPage == notesPage) {
+                addAll(pageNotes);
+                mOnNotesPageLoaded.onNotesPageLoaded(pageNotes);
+            }
+        }).executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
+    }
+
+
     /**
      * Highlighted if is part of multiselection of notes. Remember to search for child with card ui
      */
@@ -118,11 +175,11 @@ public class NoteAdapter extends ArrayAdapter<Note> implements Insertable {
             // If note is locked or without attachments nothing is shown
             if ((note.isLocked() && !mActivity.getSharedPreferences(Constants.PREFS_NAME,
                     Context.MODE_MULTI_PROCESS).getBoolean("settings_password_access", false))
-                    || note.getAttachmentsList().size() == 0) {
+                    || note.getFirstAttachment() == null) {
                 holder.attachmentThumbnail.setVisibility(View.GONE);
             } else {
                 holder.attachmentThumbnail.setVisibility(View.VISIBLE);
-                Attachment mAttachment = note.getAttachmentsList().get(0);
+                Attachment mAttachment = note.getFirstAttachment();
                 Uri thumbnailUri = BitmapHelper.getThumbnailUri(mActivity, mAttachment);
 
                 Glide.with(mActivity)
@@ -159,7 +216,7 @@ public class NoteAdapter extends ArrayAdapter<Note> implements Insertable {
         holder.lockedIcon.setVisibility(note.isLocked() ? View.VISIBLE : View.GONE);
         // ...the attachment icon for contracted view
         if (!expandedView) {
-            holder.attachmentIcon.setVisibility(note.getAttachmentsList().size() > 0 ? View.VISIBLE : View.GONE);
+            holder.attachmentIcon.setVisibility(note.getFirstAttachment() != null ? View.VISIBLE : View.GONE);
         }
     }
 
@@ -18,17 +18,24 @@
 package it.feio.android.omninotes.models.misc;
 
 
+import android.os.AsyncTask;
 import android.util.Log;
 import de.greenrobot.event.EventBus;
 import it.feio.android.omninotes.async.bus.DynamicNavigationReadyEvent;
+import it.feio.android.omninotes.async.bus.NotesDeletedEvent;
 import it.feio.android.omninotes.async.bus.NotesUpdatedEvent;
 import it.feio.android.omninotes.db.DbHelper;
 import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.utils.Constants;
+import it.feio.android.omninotes.utils.Navigation;
 
-import java.util.List;
+import java.util.Map;
 
 
+/**
+ * Counters of dynamic navigation entries: they're loaded from database once and then kept aligned applying the
+ * difference between previous and current state of the notes carried by update events.
+ */
 public class DynamicNavigationLookupTable {
 
 	private static DynamicNavigationLookupTable instance;
@@ -52,17 +59,26 @@ public class DynamicNavigationLookupTable {
 	}
 
 
+	/**
+	 * Recounts entries in background if counters are already in use. Deltas applied from events are based on the
+	 * states known by who saved the notes, so concurrent saves of the same note can misalign counters: this is
+	 * called at safe points, like when app is resumed, to realign them with database.
+	 */
+	public static void reconcile() {
+		if (instance != null) {
+			AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> instance.update());
+		}
+	}
+
+
 	public void update() {
 		((Runnable) () -> {
-			archived = trashed = uncategorized = reminders = 0;
-			List<Note> notes = DbHelper.getInstance().getAllNotes(false);
-			for (int i = 0; i < notes.size(); i++) {
-				if (notes.get(i).isTrashed()) trashed++;
-				else if (notes.get(i).isArchived()) archived++;
-				else if (notes.get(i).getAlarm() != null) reminders++;
-				if (notes.get(i).getCategory() == null || notes.get(i).getCategory().getId().equals(0L)) {
-					uncategorized++;
-				}
+			Map<Integer, Integer> counts = DbHelper.getInstance().getNavigationCounts();
+			synchronized (this) {
+				archived = getCount(counts, Navigation.ARCHIVE);
+				trashed = getCount(counts, Navigation.TRASH);
+				reminders = getCount(counts, Navigation.REMINDERS);
+				uncategorized = getCount(counts, Navigation.UNCATEGORIZED);
 			}
 			EventBus.getDefault().post(new DynamicNavigationReadyEvent());
 			Log.d(Constants.TAG, "Dynamic menu finished counting items");
@@ -70,8 +86,54 @@ public class DynamicNavigationLookupTable {
 	}
 
 
+	private static int getCount(Map<Integer, Integer> counts, int navigation) {
+		Integer count = counts.get(navigation);
+		return count != null ? count : 0;
+	}
+
+
 	public void onEventAsync(NotesUpdatedEvent event) {
-		update();
+		if (event.previousNotes == null) {
+			update();
+			return;
+		}
+		synchronized (this) {
+			for (int i = 0; i < event.notes.size(); i++) {
+				count(event.previousNotes.get(i), -1);
+				count(event.notes.get(i), 1);
+			}
+		}
+		EventBus.getDefault().post(new DynamicNavigationReadyEvent());
+	}
+
+
+	public void onEventAsync(NotesDeletedEvent event) {
+		if (event.notes == null) {
+			update();
+			return;
+		}
+		synchronized (this) {
+			for (Note note : event.notes) {
+				count(note, -1);
+			}
+		}
+		EventBus.getDefault().post(new DynamicNavigationReadyEvent());
+	}
+
+
+	/**
+	 * Adds (or removes with negative delta) a note to counters using the same criteria of the database count
+	 */
+	private void count(Note note, int delta) {
+		if (note == null) {
+			return;
+		}
+		if (Boolean.TRUE.equals(note.isTrashed())) trashed += delta;
+		else if (Boolean.TRUE.equals(note.isArchived())) archived += delta;
+		else if (note.getAlarm() != null) reminders += delta;
+		if (note.getCategory() == null || note.getCategory().getId() == null || note.getCategory().getId().equals(0L)) {
+			uncategorized += delta;
+		}
 	}
 
 
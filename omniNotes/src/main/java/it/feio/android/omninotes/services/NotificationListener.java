@@ -69,6 +69,10 @@ public class NotificationListener extends NotificationListenerService {
 	public void onEventAsync(NotificationRemovedEvent event) {
 		Long nodeId = Long.valueOf(event.statusBarNotification.getTag());
 		Note note = DbHelper.getInstance().getNote(nodeId);
+		// Grouped reminders summary is not bound to any note
+		if (note == null) {
+			return;
+		}
 		if (!DateUtils.isFuture(note.getAlarm())) {
 			DbHelper.getInstance().setReminderFired(nodeId, true);
 		}
@@ -53,7 +53,6 @@ public interface ConstantsBase {
 	String INTENT_CATEGORY = "category";
 	String INTENT_GOOGLE_NOW = "com.google.android.gm.action.AUTO_SEND";
 	String INTENT_WIDGET = "widget_id";
-	String INTENT_UPDATE_DASHCLOCK = "update_dashclock";
 
 	// Custom intent actions
 	String ACTION_START_APP = "action_start_app";
@@ -67,6 +66,7 @@ public interface ConstantsBase {
 	String ACTION_WIDGET_SHOW_LIST = "action_widget_show_list";
 	String ACTION_SHORTCUT_WIDGET = "action_shortcut_widget";
 	String ACTION_NOTIFICATION_CLICK = "action_notification_click";
+	String ACTION_REMINDERS_CHAIN = "action_reminders_chain";
 	String ACTION_MERGE = "action_merge";
 	String ACTION_FAB_TAKE_PHOTO = "action_fab_take_photo";
 	/**
@@ -101,6 +101,7 @@ public interface ConstantsBase {
 	String PREF_SEND_ANALYTICS = "settings_send_analytics";
 	String PREF_PRETTIFIED_DATES = "settings_prettified_dates";
 	String PREF_ENABLE_AUTOBACKUP = "settings_enable_autobackup";
+	String PREF_REMINDERS_FIRED_UNTIL = "reminders_fired_until";
 
 	String MIME_TYPE_IMAGE = "image/jpeg";
 	String MIME_TYPE_AUDIO = "audio/amr";
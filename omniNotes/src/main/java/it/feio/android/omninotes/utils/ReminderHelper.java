@@ -21,22 +21,85 @@ import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.Build;
 import android.os.Handler;
 import android.text.TextUtils;
 import android.widget.Toast;
 import it.feio.android.omninotes.OmniNotes;
 import it.feio.android.omninotes.R;
+import it.feio.android.omninotes.db.DbHelper;
+import it.feio.android.omninotes.db.ReminderQueries;
 import it.feio.android.omninotes.helpers.date.DateHelper;
 import it.feio.android.omninotes.models.Note;
 import it.feio.android.omninotes.receiver.AlarmReceiver;
 import it.feio.android.omninotes.utils.date.DateUtils;
 
 import java.util.Calendar;
+import java.util.List;
 
 
 public class ReminderHelper {
 
+	/**
+	 * Arms a single alarm for the earliest reminder not fired yet by the chain. When it goes off all the due
+	 * reminders are fired and the following one is armed again, so saved reminders never need an alarm each.
+	 * Reminders are looked up from the last chain firing rather than from now, so that one whose alarm is still
+	 * being delivered is not skipped when the alarm is armed again in the meanwhile.
+	 */
+	public static void scheduleNextReminder(Context context) {
+		Note nextReminder = getNextChainReminder(context);
+		Intent intent = getRemindersChainIntent(context);
+		AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+		if (nextReminder == null) {
+			PendingIntent sender = PendingIntent.getBroadcast(context, 0, intent, PendingIntent.FLAG_NO_CREATE);
+			if (sender != null) {
+				am.cancel(sender);
+				sender.cancel();
+			}
+			return;
+		}
+		PendingIntent sender = PendingIntent.getBroadcast(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+		setAlarm(am, Long.parseLong(nextReminder.getAlarm()), sender);
+	}
+
+
+	static Note getNextChainReminder(Context context) {
+		List<Note> nextReminders = new ReminderQueries(DbHelper.getInstance())
+				.getNextAfter(getRemindersFiredUntil(context), 1);
+		return nextReminders.isEmpty() ? null : nextReminders.get(0);
+	}
+
+
+	/**
+	 * Returns the date up to which reminders have been fired by the chain. The first time it's now, so that reminders
+	 * already overdue are not all fired at once.
+	 */
+	public static long getRemindersFiredUntil(Context context) {
+		SharedPreferences prefs = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_MULTI_PROCESS);
+		if (!prefs.contains(Constants.PREF_REMINDERS_FIRED_UNTIL)) {
+			setRemindersFiredUntil(context, Calendar.getInstance().getTimeInMillis());
+		}
+		return prefs.getLong(Constants.PREF_REMINDERS_FIRED_UNTIL, 0);
+	}
+
+
+	public static void setRemindersFiredUntil(Context context, long firedUntil) {
+		context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_MULTI_PROCESS).edit()
+				.putLong(Constants.PREF_REMINDERS_FIRED_UNTIL, firedUntil).apply();
+	}
+
+
+	static Intent getRemindersChainIntent(Context context) {
+		Intent intent = new Intent(context, AlarmReceiver.class);
+		intent.setAction(Constants.ACTION_REMINDERS_CHAIN);
+		return intent;
+	}
+
+
+	/**
+	 * Sets a one-off alarm for the note not bound to its saved reminder, like snoozes
+	 */
 	public static void addReminder(Context context, Note note) {
 		if (note.getAlarm() != null) {
 			addReminder(context, note, Long.parseLong(note.getAlarm()));
@@ -47,15 +110,19 @@ public class ReminderHelper {
 	public static void addReminder(Context context, Note note, long reminder) {
 		if (DateUtils.isFuture(reminder)) {
 			Intent intent = new Intent(context, AlarmReceiver.class);
-			intent.putExtra(Constants.INTENT_NOTE, ParcelableUtil.marshall(note));
+			intent.putExtra(Constants.INTENT_KEY, note.get_id());
 			PendingIntent sender = PendingIntent.getBroadcast(context, getRequestCode(note), intent,
 					PendingIntent.FLAG_CANCEL_CURRENT);
-			AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-				am.setExact(AlarmManager.RTC_WAKEUP, reminder, sender);
-			} else {
-				am.set(AlarmManager.RTC_WAKEUP, reminder, sender);
-			}
+			setAlarm((AlarmManager) context.getSystemService(Context.ALARM_SERVICE), reminder, sender);
+		}
+	}
+
+
+	private static void setAlarm(AlarmManager am, long reminder, PendingIntent sender) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			am.setExact(AlarmManager.RTC_WAKEUP, reminder, sender);
+		} else {
+			am.set(AlarmManager.RTC_WAKEUP, reminder, sender);
 		}
 	}
 
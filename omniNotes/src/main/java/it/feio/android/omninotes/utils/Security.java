@@ -31,6 +31,8 @@ import java.security.spec.InvalidKeySpecException;
 
 public class Security {
 
+    public static final String CONTENT_DIGEST_ALGORITHM = "SHA-256";
+
 
     public static String md5(String s) {
         try {
@@ -52,6 +54,27 @@ public class Security {
     }
 
 
+    /**
+     * Digest used to identify files by their content
+     */
+    public static MessageDigest getContentDigest() {
+        try {
+            return MessageDigest.getInstance(CONTENT_DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(CONTENT_DIGEST_ALGORITHM + " not available", e);
+        }
+    }
+
+
+    public static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b & 0xFF));
+        }
+        return hex.toString();
+    }
+
+
     public static String encrypt(String value, String password) {
         String encrypedValue = "";
         try {
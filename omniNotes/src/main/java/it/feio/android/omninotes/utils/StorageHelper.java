@@ -33,6 +33,7 @@ import it.feio.android.omninotes.OmniNotes;
 import it.feio.android.omninotes.R;
 import it.feio.android.omninotes.models.Attachment;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 
 import java.io.File;
@@ -43,10 +44,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.security.InvalidParameterException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import it.feio.android.omninotes.OmniNotes;
 import it.feio.android.omninotes.R;
@@ -55,6 +65,15 @@ import it.feio.android.omninotes.models.Attachment;
 
 public class StorageHelper {
 
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Paths of files handed out by {@link #storeByContent(File, long)} with the ids of the attachments using them
+     * that are not saved yet, guarded by the lock on this class
+     */
+    private static final Map<String, Set<Long>> unsavedAttachmentsFiles = new HashMap<>();
+
+
     public static boolean checkStorage() {
         boolean mExternalStorageAvailable;
         boolean mExternalStorageWriteable;
@@ -202,6 +221,54 @@ public class StorageHelper {
     }
 
 
+    /**
+     * Copies a file through channels. Without digest data is moved by the system without passing through Java heap,
+     * otherwise it's digested while copied to avoid reading it twice.
+     *
+     * @param digest Digest to update with copied data, can be null
+     * @throws IOException If copy fails, destination could have been partially written
+     */
+    public static void copyFileChannel(File source, File destination, MessageDigest digest) throws IOException {
+        FileInputStream is = null;
+        FileOutputStream os = null;
+        try {
+            is = new FileInputStream(source);
+            os = new FileOutputStream(destination);
+            FileChannel in = is.getChannel();
+            FileChannel out = os.getChannel();
+            if (digest == null) {
+                long size = in.size();
+                long position = 0;
+                // Transfers can copy less than requested
+                while (position < size) {
+                    long transferred = in.transferTo(position, size - position, out);
+                    if (transferred <= 0) {
+                        // Source has been truncated while copying, otherwise the transfer is stuck
+                        if (position >= in.size()) {
+                            break;
+                        }
+                        throw new IOException("No data transferred copying " + source + " at " + position);
+                    }
+                    position += transferred;
+                }
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    digest.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(is);
+            IOUtils.closeQuietly(os);
+        }
+    }
+
+
     public static boolean deleteExternalStoragePrivateFile(Context mContext, String name) {
         // Checks for external storage availability
         if (!checkStorage()) {
@@ -375,7 +442,8 @@ public class StorageHelper {
             }
             return size;
         } else {
-            return 0;
+            // Single file backups
+            return directory.length();
         }
     }
 
@@ -502,6 +570,8 @@ public class StorageHelper {
         Attachment mAttachment = null;
         if (f != null) {
             mAttachment = new Attachment(Uri.fromFile(f), StorageHelper.getMimeTypeInternal(mContext, uri));
+            f = storeByContent(f, mAttachment.getId());
+            mAttachment.setUri(Uri.fromFile(f));
             mAttachment.setName(name);
             mAttachment.setSize(f.length());
         }
@@ -509,6 +579,87 @@ public class StorageHelper {
     }
 
 
+    /**
+     * Renames a new attachment file after its content hash, so that identical files are stored once and shared by
+     * all the attachments having them. If the same content is already stored the new file is removed. Returned file
+     * is then kept from deletion until the attachment is saved or discarded, see
+     * {@link #releaseAttachmentsFiles(List)}.
+     *
+     * @param attachmentId Id of the new attachment that will use the file
+     * @return File to be used by the attachment
+     */
+    public static File storeByContent(File file, long attachmentId) {
+        String extension = FilenameUtils.getExtension(file.getName());
+        File contentFile;
+        try {
+            contentFile = new File(file.getParentFile(), getContentHash(file) + (TextUtils.isEmpty(extension) ? ""
+                    : "." + extension));
+        } catch (IOException e) {
+            Log.w(Constants.TAG, "Can't hash file " + file.getName() + ", it won't be shared", e);
+            return file;
+        }
+        synchronized (StorageHelper.class) {
+            if (contentFile.exists()) {
+                file.delete();
+            } else if (!file.renameTo(contentFile)) {
+                return file;
+            }
+            Set<Long> attachmentsIds = unsavedAttachmentsFiles.get(contentFile.getAbsolutePath());
+            if (attachmentsIds == null) {
+                attachmentsIds = new HashSet<>();
+                unsavedAttachmentsFiles.put(contentFile.getAbsolutePath(), attachmentsIds);
+            }
+            attachmentsIds.add(attachmentId);
+            return contentFile;
+        }
+    }
+
+
+    /**
+     * Files handed out to new attachments are not tracked anymore once these are saved, from then on database tells
+     * if a file is used, or discarded
+     */
+    public static void releaseAttachmentsFiles(List<Attachment> attachments) {
+        synchronized (StorageHelper.class) {
+            for (Attachment attachment : attachments) {
+                String path = new File(attachment.getUri().getPath()).getAbsolutePath();
+                Set<Long> attachmentsIds = unsavedAttachmentsFiles.get(path);
+                if (attachmentsIds != null) {
+                    attachmentsIds.remove(attachment.getId());
+                    if (attachmentsIds.isEmpty()) {
+                        unsavedAttachmentsFiles.remove(path);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Tells if the file has been handed out by {@link #storeByContent(File, long)} to attachments not saved yet.
+     * Callers must hold the lock on this class from this check to the file deletion.
+     */
+    public static boolean isUsedByUnsavedAttachments(File file) {
+        return unsavedAttachmentsFiles.containsKey(file.getAbsolutePath());
+    }
+
+
+    public static String getContentHash(File file) throws IOException {
+        MessageDigest digest = Security.getContentDigest();
+        InputStream is = null;
+        try {
+            is = new DigestInputStream(new FileInputStream(file), digest);
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            while (is.read(buffer) != -1) {
+                // Data is digested while read
+            }
+            return Security.toHex(digest.digest());
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+
     /**
      * Creates new attachment from web content
      *
@@ -44,7 +44,7 @@ public class TextHelper {
         final int CONTENT_SUBSTRING_LENGTH = 300;
 
 		String titleText = note.getTitle();
-		String contentText = limit(note.getContent().trim(), CONTENT_SUBSTRING_LENGTH, false, true);
+		String contentText = limit(note.getContentPreview().trim(), CONTENT_SUBSTRING_LENGTH, false, true);
 
         // Masking title and content string if note is locked
         if (note.isLocked()
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2013-2019 Federico Iosue (federico@iosue.it)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.feio.android.omninotes.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import it.feio.android.omninotes.models.Attachment;
+
+
+/**
+ * Disk cache of attachments thumbnails used as notifications large icons, files are named after attachments ids
+ * since attachments are never modified once added. Thumbnails are decoded in advance when a reminder is saved so
+ * that firing reminders just reads them. Cache is bounded to {@link #MAX_THUMBNAILS} files, the least recently used
+ * ones are evicted first.
+ */
+public class ThumbnailCache {
+
+	public static final int THUMBNAIL_SIZE = 128;
+	private static final int MAX_THUMBNAILS = 200;
+	private static final String THUMBNAILS_DIR = "thumbnails";
+
+
+	/**
+	 * Retrieves the cached thumbnail of the attachment, decoding and caching it if missing.
+	 * Must not be called on main thread.
+	 */
+	public static Bitmap getThumbnail(Context mContext, Attachment attachment) {
+		File thumbnailFile = getThumbnailFile(mContext, attachment);
+		if (thumbnailFile.exists()) {
+			Bitmap thumbnail = BitmapFactory.decodeFile(thumbnailFile.getAbsolutePath());
+			if (thumbnail != null) {
+				// Modification date keeps track of last use for eviction
+				thumbnailFile.setLastModified(System.currentTimeMillis());
+				return thumbnail;
+			}
+		}
+		Bitmap thumbnail = BitmapHelper.getBitmapFromAttachment(mContext, attachment, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+		if (thumbnail != null) {
+			store(thumbnailFile, thumbnail);
+			trim(thumbnailFile.getParentFile());
+		}
+		return thumbnail;
+	}
+
+
+	/**
+	 * Decodes and caches attachment thumbnail if not already done. Must not be called on main thread.
+	 */
+	public static void prepare(Context mContext, Attachment attachment) {
+		if (!getThumbnailFile(mContext, attachment).exists()) {
+			getThumbnail(mContext, attachment);
+		}
+	}
+
+
+	public static void remove(Context mContext, Attachment attachment) {
+		getThumbnailFile(mContext, attachment).delete();
+	}
+
+
+	private static File getThumbnailFile(Context mContext, Attachment attachment) {
+		File dir = new File(mContext.getCacheDir(), THUMBNAILS_DIR);
+		if (!dir.exists()) {
+			dir.mkdirs();
+		}
+		return new File(dir, attachment.getId() + ".png");
+	}
+
+
+	/**
+	 * Deletes least recently used thumbnails exceeding the cache size
+	 */
+	private static synchronized void trim(File dir) {
+		File[] thumbnails = dir.listFiles();
+		if (thumbnails == null || thumbnails.length <= MAX_THUMBNAILS) {
+			return;
+		}
+		// Dates are read once since they may change while sorting
+		Map<File, Long> lastUses = new HashMap<>();
+		for (File thumbnail : thumbnails) {
+			lastUses.put(thumbnail, thumbnail.lastModified());
+		}
+		Arrays.sort(thumbnails, (f1, f2) -> lastUses.get(f1).compareTo(lastUses.get(f2)));
+		for (int i = 0; i < thumbnails.length - MAX_THUMBNAILS; i++) {
+			thumbnails[i].delete();
+		}
+	}
+
+
+	private static void store(File thumbnailFile, Bitmap thumbnail) {
+		OutputStream os = null;
+		try {
+			os = new FileOutputStream(thumbnailFile);
+			thumbnail.compress(Bitmap.CompressFormat.PNG, 100, os);
+		} catch (IOException e) {
+			Log.w(Constants.TAG, "Error caching thumbnail " + thumbnailFile.getName(), e);
+		} finally {
+			if (os != null) {
+				try {
+					os.close();
+				} catch (IOException e) {
+					Log.w(Constants.TAG, "Error closing thumbnail " + thumbnailFile.getName(), e);
+				}
+			}
+		}
+	}
+
+}
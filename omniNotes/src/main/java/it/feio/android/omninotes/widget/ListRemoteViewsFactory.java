@@ -81,7 +81,7 @@ public class ListRemoteViewsFactory implements RemoteViewsFactory {
                 .getString(
                         Constants.PREF_WIDGET_PREFIX
                                 + String.valueOf(appWidgetId), "");
-        notes = DbHelper.getInstance().getNotes(condition, true);
+        notes = DbHelper.getInstance().getNoteSummaries(condition, true);
     }
 
     @Override
@@ -93,7 +93,7 @@ public class ListRemoteViewsFactory implements RemoteViewsFactory {
                 .getString(
                         Constants.PREF_WIDGET_PREFIX
                                 + String.valueOf(appWidgetId), "");
-        notes = DbHelper.getInstance().getNotes(condition, true);
+        notes = DbHelper.getInstance().getNoteSummaries(condition, true);
     }
 
     @Override
@@ -122,8 +122,8 @@ public class ListRemoteViewsFactory implements RemoteViewsFactory {
 
         color(note, row);
 
-        if (!note.isLocked() && showThumbnails && note.getAttachmentsList().size() > 0) {
-      			Attachment mAttachment = note.getAttachmentsList().get(0);
+        if (!note.isLocked() && showThumbnails && note.getFirstAttachment() != null) {
+      			Attachment mAttachment = note.getFirstAttachment();
       			Bitmap bmp = BitmapHelper.getBitmapFromAttachment(app, mAttachment, WIDTH, HEIGHT);
       			row.setBitmap(R.id.attachmentThumbnail, "setImageBitmap", bmp);
             row.setInt(R.id.attachmentThumbnail, "setVisibility", View.VISIBLE);
@@ -138,8 +138,9 @@ public class ListRemoteViewsFactory implements RemoteViewsFactory {
 
         // Next, set a fill-intent, which will be used to fill in the pending intent template
         // that is set on the collection view in StackWidgetProvider.
+        // Just the id is passed to let the whole note being loaded only when opened
         Bundle extras = new Bundle();
-        extras.putParcelable(Constants.INTENT_NOTE, note);
+        extras.putLong(Constants.INTENT_KEY, note.get_id());
         Intent fillInIntent = new Intent();
         fillInIntent.putExtras(extras);
         // Make it possible to distinguish the individual on-click